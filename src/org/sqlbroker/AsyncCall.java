@@ -0,0 +1,394 @@
+package org.sqlbroker;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import root.lang.ParamString;
+import root.log.Log;
+
+/**
+ * A {@link FutureTask} that runs one SQLBroker call on an {@link Executor}.
+ * While the call is executing, the {@link Statement} it runs is attached to
+ * the task so that <code>cancel(true)</code> or an elapsed timeout is
+ * propagated to the database through <code>Statement.cancel()</code>.
+ *
+ * A {@link QueryResult} or {@link QueryStream} produced by a call that was
+ * cancelled or timed out is closed immediately since nobody will ever
+ * receive it. If a completion queue is supplied, the call adds itself to it
+ * once it is done, whether it succeeded, failed, or was cancelled.
+ *
+ * The {@link Parameters} of the call are pinned until the call has either
+ * run or been cancelled before it started, so they cannot be cleared or
+ * pooled while a worker thread may still bind them.
+ *
+ * @author esmith
+ *
+ * @param <V> The result type of the call
+ */
+final class AsyncCall<V> extends FutureTask<V> {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(AsyncCall.class);
+
+	/** The {@link AsyncCall} being run by the current thread, if any	*/
+	private static final ThreadLocal<AsyncCall<?>> current = new ThreadLocal<>();
+
+	/**
+	 * Lazily creates the shared executors so that applications which never
+	 * use the asynchronous API never start any threads.
+	 */
+	private static final class Shared {
+
+		private static final ExecutorService defaultExecutor = newDefaultExecutor();
+
+		private static final ScheduledThreadPoolExecutor timer = newTimer();
+
+	}	// End Shared
+
+	/**
+	 * Returns the shared {@link Executor} used by a SQLBroker that was not
+	 * given one. It runs each call on its own virtual thread when the JVM
+	 * supports them and falls back to a cached pool of daemon threads.
+	 *
+	 * @return the default {@link Executor}
+	 */
+	static final Executor getDefaultExecutor() {
+		return Shared.defaultExecutor;
+	}
+
+	/**
+	 * Attaches the {@link Statement} about to be executed to the
+	 * {@link AsyncCall} running on the current thread, if any.
+	 */
+	static final void attach(final Statement stmt) {
+		final AsyncCall<?> call = current.get();
+
+		if (call != null) {
+			call.setStatement(stmt);
+		}
+	}
+
+	/**
+	 * Detaches the executed {@link Statement} from the {@link AsyncCall}
+	 * running on the current thread before the statement is released.
+	 */
+	static final void detach() {
+		final AsyncCall<?> call = current.get();
+
+		if (call != null) {
+			call.setStatement(null);
+		}
+	}
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The {@link Statement} currently executing on behalf of the call	*/
+	private Statement stmt;
+
+	/** Set once a worker thread has started running the call			*/
+	private boolean isStarted;
+
+	/** The pinned {@link Parameters}, or <code>null</code> once unpinned	*/
+	private Parameters params;
+
+	/** The pinned {@link BatchParams}, or <code>null</code> once unpinned	*/
+	private BatchParams batch;
+
+	/** The pending timeout, or <code>null</code> if there is none		*/
+	private ScheduledFuture<?> timeout;
+
+	/** The index of the call within its {@link QueryGroup}, or -1		*/
+	private int index = -1;
+
+	/** Receives this call once it completes, may be <code>null</code>	*/
+	private final BlockingQueue<? super AsyncCall<V>> completed;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	AsyncCall(final Callable<V> callable) {
+		this(callable, null);
+	}
+
+	AsyncCall(final Callable<V> callable, final BlockingQueue<? super AsyncCall<V>> completed) {
+		super(callable);
+		this.completed = completed;
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final boolean cancel(final boolean mayInterruptIfRunning) {
+		final boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+		if (cancelled && mayInterruptIfRunning) {
+			cancelStatement();
+		}
+
+		return cancelled;
+	}
+
+	@Override
+	public final void run() {
+		synchronized (this) {
+			isStarted = true;
+		}
+
+		current.set(this);
+		try {
+			super.run();
+		} finally {
+			current.remove();
+			setStatement(null);
+			unpin();
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Cancels the call and the statement it is running without interrupting
+	 * the worker thread, which a root {@link root.thread.ThreadPool} thread
+	 * must never be left with.
+	 */
+	final boolean abort() {
+		final boolean cancelled = super.cancel(false);
+
+		if (cancelled) {
+			cancelStatement();
+		}
+
+		return cancelled;
+	}
+
+	final int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Sets the index of the call within its {@link QueryGroup}, so that the
+	 * group knows which query completed without searching for it.
+	 */
+	final AsyncCall<V> index(final int i) {
+		index = i;
+		return this;
+	}
+
+	/**
+	 * Pins the {@link Parameters} of the call until it is no longer able to
+	 * bind them. A <code>null</code> value is ignored.
+	 */
+	final AsyncCall<V> pin(final Parameters params) {
+		if (params != null) {
+			params.pin();
+			synchronized (this) {
+				this.params = params;
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Pins the {@link BatchParams} of the call until it is no longer able
+	 * to bind them. A <code>null</code> value is ignored.
+	 */
+	final AsyncCall<V> pin(final BatchParams batch) {
+		if (batch != null) {
+			batch.pin();
+			synchronized (this) {
+				this.batch = batch;
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Submits this call to the {@link Executor}. If <code>millis</code> is
+	 * greater than zero, the call fails with a {@link TimeoutException} and
+	 * its statement is cancelled once that many milliseconds have elapsed.
+	 */
+	final AsyncCall<V> submit(final Executor executor, final long millis) {
+		if (millis > 0) {
+			final Runnable task = new Runnable() {
+				public void run() {
+					expire(millis);
+				}
+			};
+
+			synchronized (this) {
+				timeout = Shared.timer.schedule(task, millis, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		executor.execute(this);
+		return this;
+	}
+
+	// <><><><><><><><><><><><><>< Protected Methods ><><><><><><><><><><><><><>
+
+	@Override
+	protected final void done() {
+		final ScheduledFuture<?> t;
+		final boolean wasStarted;
+
+		synchronized (this) {
+			t = timeout;
+			timeout = null;
+			wasStarted = isStarted;
+		}
+
+		if (t != null) {
+			t.cancel(false);
+		}
+
+		// Calls that never started are never run, so nothing else unpins them
+		if (!wasStarted) {
+			unpin();
+		}
+
+		if (completed != null) {
+			completed.add(this);
+		}
+	}
+
+	@Override
+	protected final void set(final V v) {
+		super.set(v);
+
+		// Close the result unless it is what the Future actually completed with
+		if (!isDelivered(v)) {
+			if (v instanceof QueryResult) {
+				log.debug("Closing QueryResult of an abandoned call");
+				((QueryResult) v).close();
+			} else if (v instanceof QueryStream) {
+				log.debug("Closing QueryStream of an abandoned call");
+				((QueryStream<?>) v).close();
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Cancels the statement while holding the monitor that
+	 * <code>attach()</code> and <code>detach()</code> take, so it cannot be
+	 * released to the statement cache and reused by another call first.
+	 */
+	private synchronized void cancelStatement() {
+		if (stmt != null) {
+			try {
+				stmt.cancel();
+			} catch (SQLException e) {
+				log.debug("Statement.cancel() failed: {P}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the call completed normally with the
+	 * result, rather than being cancelled or timing out first.
+	 */
+	private boolean isDelivered(final V v) {
+		boolean interrupted = false;
+
+		try {
+			while (true) {
+				try {
+					return get() == v;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException | CancellationException e) {
+			return false;
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void expire(final long millis) {
+		if (!isDone()) {
+			setException(new TimeoutException(ParamString.formatMsg("SQL call timed out after {P} ms", millis)));
+			cancelStatement();
+		}
+	}
+
+	private void unpin() {
+		final Parameters p;
+		final BatchParams b;
+
+		synchronized (this) {
+			p = params;
+			params = null;
+			b = batch;
+			batch = null;
+		}
+
+		if (p != null) {
+			p.unpin();
+		}
+
+		if (b != null) {
+			b.unpin();
+		}
+	}
+
+	private synchronized void setStatement(final Statement stmt) {
+		this.stmt = stmt;
+	}
+
+	private static ExecutorService newDefaultExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			log.debug("Virtual threads are not supported, using a cached thread pool");
+		}
+
+		return Executors.newCachedThreadPool(new DaemonThreadFactory("SQLBroker-async"));
+	}
+
+	private static ScheduledThreadPoolExecutor newTimer() {
+		final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("SQLBroker-timeout"));
+
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+
+		private int count;
+		private final String name;
+
+		private DaemonThreadFactory(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public final synchronized Thread newThread(final Runnable r) {
+			final Thread t = new Thread(r, name + '-' + count++);
+			t.setDaemon(true);
+			return t;
+		}
+
+	}	// End DaemonThreadFactory
+
+}	// End AsyncCall
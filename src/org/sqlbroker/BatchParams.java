@@ -1,14 +1,26 @@
 package org.sqlbroker;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import root.log.Log;
 
 public class BatchParams {
 
 	private static final Log log = new Log(BatchParams.class);
 
+	/** Updates the pin count without allocating an atomic per instance	*/
+	private static final AtomicIntegerFieldUpdater<BatchParams> pinUpdater = AtomicIntegerFieldUpdater.newUpdater(BatchParams.class, "pins");
+
 	int			size;
 	Object[][]	values;
 
+	/** Set while this instance sits idle in a {@link ParameterPool}	*/
+	boolean		isPooled;
+
+	/** The number of pending calls still referencing this instance		*/
+	private volatile int pins;
+
 	public BatchParams(final int capacity) {
 		values = new Object[capacity][];
 	}
@@ -24,8 +36,36 @@ public class BatchParams {
 		values[size++] = objs;
 	}
 
+	/**
+	 * Removes every row so the instance can be filled again, keeping the
+	 * capacity it has grown to.
+	 */
+	public void clear() {
+		if (pins > 0) {
+			throw new IllegalStateException("BatchParams are still referenced by a pending call");
+		}
+
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+
+	public boolean isPinned() {
+		return pins > 0;
+	}
+
 	public int size() {
 		return size;
 	}
 
+	/**
+	 * Marks this instance as referenced by a pending call.
+	 */
+	final void pin() {
+		pinUpdater.incrementAndGet(this);
+	}
+
+	final void unpin() {
+		pinUpdater.decrementAndGet(this);
+	}
+
 }	// End BatchParams
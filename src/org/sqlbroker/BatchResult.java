@@ -2,12 +2,19 @@ package org.sqlbroker;
 
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 
 public class BatchResult {
 
-	private int	numErrors;
-	private int	notExecuted;
-	private int	numRowsAffected;
+	/** The number of failed rows listed by <code>toString()</code>		*/
+	private static final int MAX_FAILED_ROWS = 10;
+
+	/** Set once the update counts have been tallied by <code>tally()</code>	*/
+	private boolean	tallied;
+	private int		numErrors;
+	private int		numNoInfo;
+	private long	numRowsAffected;
+	private int[]	failed;
 
 	private String cached;
 
@@ -15,13 +22,23 @@ public class BatchResult {
 	private final String[]		stmts;
 	private final BatchParams	params;
 
+	/** The number of rows submitted, or -1 to count the params or statements	*/
+	private final int			size;
+
 	final int[] results;
 
+	/** The totals of a batch streamed in chunks, whose rows are not kept	*/
+	private int		chunks;
+	private long	rows;
+	private long	rowsAffected;
+	private long	noInfo;
+
 	BatchResult(final Statement stmt, final String[] stmts) throws SQLException {
 		this.sql = null;
 		this.params = null;
 		this.stmts = stmts;
 		this.results = stmt.executeBatch();
+		this.size = -1;
 	}
 
 	public BatchResult(final int[] updateCounts, String[] stmts) {
@@ -29,6 +46,7 @@ public class BatchResult {
 		this.params = null;
 		this.stmts = stmts;
 		this.results = updateCounts;
+		this.size = -1;
 	}
 
 	BatchResult(final String sql, final BatchParams params, final Statement stmt) throws SQLException {
@@ -36,6 +54,7 @@ public class BatchResult {
 		this.sql = sql;
 		this.params = params;
 		this.results = stmt.executeBatch();
+		this.size = -1;
 		stmt.clearBatch();
 	}
 
@@ -44,59 +63,216 @@ public class BatchResult {
 		this.sql = sql;
 		this.params = params;
 		this.results = updateCounts;
+		this.size = -1;
+	}
+
+	/**
+	 * Creates the result of a batch of <code>size</code> rows whose
+	 * parameters are not kept, such as one of {@link ColumnParams}.
+	 */
+	BatchResult(final String sql, final int size, final int[] updateCounts) {
+		this.stmts = null;
+		this.sql = sql;
+		this.params = null;
+		this.results = updateCounts;
+		this.size = size;
+	}
+
+	/**
+	 * Creates the result of a batch streamed in chunks, which only keeps
+	 * the totals of the update counts added with <code>add()</code>.
+	 */
+	BatchResult(final String sql) {
+		this.stmts = null;
+		this.sql = sql;
+		this.params = null;
+		this.results = null;
+		this.size = -1;
+	}
+
+	/**
+	 * Returns the number of chunks a streamed batch was sent in, or one for
+	 * any other batch.
+	 */
+	public final int getChunks() {
+		return (results == null) ? chunks : 1;
+	}
+
+	/**
+	 * Returns the number of rows or statements executed.
+	 */
+	public final long getRows() {
+		return (results == null) ? rows : results.length;
+	}
+
+	/**
+	 * Returns the number of rows or statements submitted, or the number of
+	 * rows executed for a streamed batch.
+	 */
+	public final int getBatchSize() {
+		if (results == null) {
+			return (int) rows;
+		}
+
+		if (size >= 0) {
+			return size;
+		}
+
+		return (params != null) ? params.size() : (stmts != null) ? stmts.length : results.length;
+	}
+
+	/**
+	 * Returns the number of rows or statements which failed.
+	 */
+	public final int getErrors() {
+		tally();
+		return numErrors;
+	}
+
+	/**
+	 * Returns the zero-based indices of the rows or statements which
+	 * failed, in order. A streamed batch does not keep them.
+	 */
+	public final int[] getFailedRows() {
+		tally();
+		return failed.clone();
+	}
+
+	/**
+	 * Returns the number of rows or statements which succeeded without
+	 * reporting an update count.
+	 */
+	public final long getNoInfo() {
+		if (results == null) {
+			return noInfo;
+		}
+
+		tally();
+		return numNoInfo;
+	}
+
+	/**
+	 * Returns the number of rows or statements the driver gave up on after
+	 * a failure, which are always the last ones from index
+	 * <code>getBatchSize() - getNotExecuted()</code> on.
+	 */
+	public final int getNotExecuted() {
+		return (results == null) ? 0 : Math.max(getBatchSize() - results.length, 0);
+	}
+
+	/**
+	 * Returns the number of rows affected, not counting those of statements
+	 * which succeeded without reporting a count.
+	 */
+	public final long getRowsAffected() {
+		if (results == null) {
+			return rowsAffected;
+		}
+
+		tally();
+		return numRowsAffected;
 	}
 
+	/**
+	 * Returns a summary of the batch followed by the first failed rows, so
+	 * that even the message of a failed batch of millions of rows stays
+	 * small.
+	 */
 	public String toString() {
+		if (results == null) {
+			return "Batch Results: [sql=" + sql + "]\nChunks: " + chunks + ", Rows: " + rows + ", Rows affected: " + rowsAffected + ", OK no info: " + noInfo + ", Errors: " + numErrors;
+		}
+
 		if (cached == null) {
-			final int batchSize = (params != null) ? params.size() : stmts.length;
-			final StringBuilder builder = new StringBuilder(batchSize * 256 + 375);
-			int i = 0;
-			numErrors = 0;
-			notExecuted = 0;
-			numRowsAffected = 0;
-
-			builder.append("Batch Results: ");
-			if (sql == null) {
-				for (String s : stmts) {
-					resultRow(builder, i++);
-					builder.append(", Sql: [").append(s).append(']');
-				}
-			} else {
-				builder.append("[sql=").append(sql).append(']');
-				for (Object[] p : params.values) {
-					resultRow(builder, i++);
-					builder.append(", Params: ").append(p);
-				}
-			}
+			final int batchSize = getBatchSize();
+			final int notExecuted = getNotExecuted();
+			final StringBuilder builder = new StringBuilder(1024);
 
-			builder.append("\nStatements run: ").append(batchSize - notExecuted);
+			tally();
+			builder.append("Batch Results: [sql=").append((sql != null) ? sql : "<statements>").append(']');
+			builder.append("\nStatements run: ").append(batchSize - notExecuted - numErrors);
 			builder.append(", Rows affected: ").append(numRowsAffected);
+			builder.append(", OK no info: ").append(numNoInfo);
 			builder.append(", Errors: ").append(numErrors);
-			builder.append(", Not executed: ").append(notExecuted);
+			builder.append(", Not executed: ").append(notExecuted + numErrors);
+
+			if (notExecuted > 0) {
+				builder.append("\nRows ").append(batchSize - notExecuted + 1).append(" to ").append(batchSize).append(" were not executed");
+			}
+
+			for (int i=0; i < failed.length && i < MAX_FAILED_ROWS; i++) {
+				builder.append("\nRow: ").append(failed[i] + 1).append(", Status: FAILED");
+				if (stmts != null && failed[i] < stmts.length) {
+					builder.append(", Sql: [").append(stmts[failed[i]]).append(']');
+				} else if (params != null && failed[i] < params.size()) {
+					builder.append(", Params: ").append(Arrays.toString(params.values[failed[i]]));
+				}
+			}
+
+			if (failed.length > MAX_FAILED_ROWS) {
+				builder.append("\n... and ").append(failed.length - MAX_FAILED_ROWS).append(" more failed rows");
+			}
+
 			cached = builder.toString();
 		}
 
 		return cached;
 	}
 
-//	**************************** Private Classes *****************************
+	/**
+	 * Adds the update counts of a chunk of a streamed batch to the totals.
+	 */
+	final void add(final int[] updateCounts) {
+		chunks++;
+		rows += updateCounts.length;
+
+		for (int r : updateCounts) {
+			if (r >= 0) {
+				rowsAffected += r;
+			} else if (r == Statement.SUCCESS_NO_INFO) {
+				noInfo++;
+			} else if (r == Statement.EXECUTE_FAILED) {
+				numErrors++;
+			}
+		}
+	}
 
-	private void resultRow(final StringBuilder builder, final int i) {
-		builder.append("\nRow: ").append(i+1).append(", Status: ");
+//	**************************** Private Methods *****************************
 
-		if (i >= results.length) {
-			notExecuted++;
-			builder.append("NOT EXECUTED");
-		} else if (results[i] == Statement.EXECUTE_FAILED) {
-			numErrors++;
-			notExecuted++;
-			builder.append("FAILED");
-		} else if (results[i] == Statement.SUCCESS_NO_INFO)
-			builder.append("OK NO INFO");
-		else {
-			numRowsAffected += results[i];
-			builder.append("OK [updateCount=").append(results[i]).append(']');
+	/**
+	 * Tallies the update counts in a single pass, keeping the indices of
+	 * the failed rows.
+	 */
+	private void tally() {
+		if (tallied || results == null) {
+			if (failed == null) {
+				failed = new int[0];
+			}
+			return;
 		}
+
+		int[] f = new int[8];
+		int errors = 0, none = 0;
+		long affected = 0;
+
+		for (int i=0; i < results.length; i++) {
+			if (results[i] >= 0) {
+				affected += results[i];
+			} else if (results[i] == Statement.SUCCESS_NO_INFO) {
+				none++;
+			} else if (results[i] == Statement.EXECUTE_FAILED) {
+				if (errors == f.length) {
+					f = Arrays.copyOf(f, errors << 1);
+				}
+				f[errors++] = i;
+			}
+		}
+
+		failed = Arrays.copyOf(f, errors);
+		numErrors = errors;
+		numNoInfo = none;
+		numRowsAffected = affected;
+		tallied = true;
 	}
 
 }	// End BatchResult
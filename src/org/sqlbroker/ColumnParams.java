@@ -0,0 +1,289 @@
+package org.sqlbroker;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import root.jdbc.SqlType;
+import root.log.Log;
+
+/**
+ * The parameters of a batch kept column by column, for bulk loads of
+ * numbers and strings. Each column is declared with its {@link SqlType} up
+ * front and stored in a primitive <code>int[]</code>, <code>long[]</code>,
+ * or <code>double[]</code>, or a <code>String[]</code>, with a bitmap of
+ * its <code>NULL</code>s, so a row costs no boxing and no array of its own.
+ * {@link SQLBroker#batch(String, ColumnParams)} binds each cell with the
+ * matching <code>setInt()</code>, <code>setLong()</code>,
+ * <code>setDouble()</code>, or <code>setString()</code> call.
+ *
+ * <pre>
+ * final ColumnParams rows = new ColumnParams(1000, SqlType.BIGINT, SqlType.INTEGER, SqlType.VARCHAR);
+ * for (Item item : items) {
+ *     rows.addRow().setLong(0, item.getId()).setInt(1, item.getCount()).setString(2, item.getName());
+ * }
+ * broker.batch("INSERT INTO item (id, count, name) VALUES (?, ?, ?)", rows);
+ * </pre>
+ *
+ * Every cell of a new row is <code>NULL</code> until it is set.
+ *
+ * @author esmith
+ */
+public final class ColumnParams {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(ColumnParams.class);
+
+	private static final byte INT		= 0;
+	private static final byte LONG		= 1;
+	private static final byte DOUBLE	= 2;
+	private static final byte STRING	= 3;
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The number of rows added										*/
+	int size;
+
+	/** The number of rows the columns have room for					*/
+	private int capacity;
+
+	/** The declared {@link SqlType} of each column						*/
+	private final SqlType[] sqlTypes;
+
+	/** The storage kind of each column									*/
+	private final byte[] kinds;
+
+	/** The values of each column, only set for the columns of their kind	*/
+	private final int[][]		ints;
+	private final long[][]		longs;
+	private final double[][]	doubles;
+	private final String[][]	strings;
+
+	/** The bitmap of the <code>NULL</code> cells of each column			*/
+	private final long[][] nulls;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	/**
+	 * Creates the columns with room for <code>capacity</code> rows.
+	 *
+	 * @param capacity the initial number of rows
+	 * @param columns the {@link SqlType} of each column
+	 * @throws IllegalArgumentException if a type is not an integer, floating
+	 *         point, or character type
+	 */
+	public ColumnParams(final int capacity, final SqlType... columns) {
+		this.capacity = Math.max(capacity, 1);
+		sqlTypes = columns.clone();
+		kinds = new byte[columns.length];
+		ints = new int[columns.length][];
+		longs = new long[columns.length][];
+		doubles = new double[columns.length][];
+		strings = new String[columns.length][];
+		nulls = new long[columns.length][];
+
+		for (int c=0; c < columns.length; c++) {
+			switch (columns[c]) {
+				case TINYINT:
+				case SMALLINT:
+				case INTEGER:
+					kinds[c] = INT;
+					ints[c] = new int[this.capacity];
+					break;
+				case BIGINT:
+					kinds[c] = LONG;
+					longs[c] = new long[this.capacity];
+					break;
+				case REAL:
+				case FLOAT:
+				case DOUBLE:
+					kinds[c] = DOUBLE;
+					doubles[c] = new double[this.capacity];
+					break;
+				case CHAR:
+				case VARCHAR:
+				case LONGVARCHAR:
+				case NCHAR:
+				case NVARCHAR:
+				case LONGNVARCHAR:
+					kinds[c] = STRING;
+					strings[c] = new String[this.capacity];
+					break;
+				default:
+					throw new IllegalArgumentException("Column " + c + " of type " + columns[c] + " cannot be stored in a column");
+			}
+
+			nulls[c] = new long[(this.capacity + 63) >>> 6];
+		}
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Adds a row of <code>NULL</code>s, which the setters then fill in.
+	 */
+	public final ColumnParams addRow() {
+		if (size == capacity) {
+			grow();
+		}
+
+		final int w = size >>> 6;
+		final long bit = 1L << size;
+
+		for (long[] n : nulls) {
+			n[w] |= bit;
+		}
+
+		size++;
+		return this;
+	}
+
+	/**
+	 * Removes every row so the instance can be filled again, keeping the
+	 * capacity it has grown to.
+	 */
+	public final void clear() {
+		for (String[] s : strings) {
+			if (s != null) {
+				Arrays.fill(s, 0, size, null);
+			}
+		}
+
+		size = 0;
+	}
+
+	public final int getColumnCount() {
+		return kinds.length;
+	}
+
+	/**
+	 * Sets the column of the last row added, which must be an integer type.
+	 */
+	public final ColumnParams setInt(final int column, final int value) {
+		if (kinds[column] == LONG) {
+			return setLong(column, value);
+		}
+
+		check(column, INT);
+		ints[column][size - 1] = value;
+		return this;
+	}
+
+	/**
+	 * Sets the column of the last row added, which must be a
+	 * <code>BIGINT</code>.
+	 */
+	public final ColumnParams setLong(final int column, final long value) {
+		check(column, LONG);
+		longs[column][size - 1] = value;
+		return this;
+	}
+
+	/**
+	 * Sets the column of the last row added, which must be a floating point
+	 * type.
+	 */
+	public final ColumnParams setDouble(final int column, final double value) {
+		check(column, DOUBLE);
+		doubles[column][size - 1] = value;
+		return this;
+	}
+
+	/**
+	 * Sets the column of the last row added to <code>NULL</code>.
+	 */
+	public final ColumnParams setNull(final int column) {
+		if (size == 0) {
+			throw new IllegalStateException("Call addRow() before setting a column");
+		}
+
+		final int row = size - 1;
+
+		nulls[column][row >>> 6] |= 1L << row;
+		if (strings[column] != null) {
+			strings[column][row] = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the column of the last row added, which must be a character
+	 * type, to the string or to <code>NULL</code>.
+	 */
+	public final ColumnParams setString(final int column, final String value) {
+		if (value == null) {
+			return setNull(column);
+		}
+
+		check(column, STRING);
+		strings[column][size - 1] = value;
+		return this;
+	}
+
+	public final int size() {
+		return size;
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Binds the row to the {@link PreparedStatement} with the setter of
+	 * each column's type.
+	 */
+	final void bind(final PreparedStatement stmt, final int row) throws SQLException {
+		final int w = row >>> 6;
+		final long bit = 1L << row;
+		int i;
+
+		for (int c=0; c < kinds.length; c++) {
+			i = c + 1;
+
+			if ((nulls[c][w] & bit) != 0) {
+				stmt.setNull(i, sqlTypes[c].getCode());
+				continue;
+			}
+
+			switch (kinds[c]) {
+				case INT:		stmt.setInt(i, ints[c][row]); break;
+				case LONG:		stmt.setLong(i, longs[c][row]); break;
+				case DOUBLE:	stmt.setDouble(i, doubles[c][row]); break;
+				default:		stmt.setString(i, strings[c][row]);
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private void check(final int column, final byte kind) {
+		if (size == 0) {
+			throw new IllegalStateException("Call addRow() before setting a column");
+		}
+
+		if (kinds[column] != kind) {
+			throw new IllegalArgumentException("Column " + column + " is declared as " + sqlTypes[column]);
+		}
+
+		final int row = size - 1;
+		nulls[column][row >>> 6] &= ~(1L << row);
+	}
+
+	private void grow() {
+		final int n = capacity << 1;
+
+		log.warn("addRow(): Increasing capacity from {P} to {P}", capacity, n);
+		for (int c=0; c < kinds.length; c++) {
+			switch (kinds[c]) {
+				case INT:		ints[c] = Arrays.copyOf(ints[c], n); break;
+				case LONG:		longs[c] = Arrays.copyOf(longs[c], n); break;
+				case DOUBLE:	doubles[c] = Arrays.copyOf(doubles[c], n); break;
+				default:		strings[c] = Arrays.copyOf(strings[c], n);
+			}
+
+			nulls[c] = Arrays.copyOf(nulls[c], (n + 63) >>> 6);
+		}
+
+		capacity = n;
+	}
+
+}	// End ColumnParams
@@ -1,17 +1,41 @@
 package org.sqlbroker;
 
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.sqlbroker.helper.Select;
+import org.sqlbroker.mapper.Mapper;
+
 import root.adt.ListArray;
-import root.clock.Profiler;
+import root.adt.MapHashed;
+import root.jdbc.DatabaseException;
 import root.jdbc.PooledDataSource;
-import root.thread.Sync;
+import root.log.Log;
 import root.thread.ThreadPool;
 
 /**
+ * Runs groups of SQL queries concurrently on a {@link ThreadPool}. Each
+ * call to <code>group()</code> returns an independent {@link QueryGroup},
+ * so a single ConcurrentSQLBroker can be shared by every request thread.
+ *
+ * The {@link ThreadPool} capacity bounds how many queries of one group run
+ * at the same time, so size it no larger than the connection pool of the
+ * {@link PooledDataSource}.
+ *
+ * It can also fan a single {@link Select} out to several sharded
+ * {@link PooledDataSource}s and merge the ordered results with
+ * <code>queryShards()</code>.
  *
  * @author esmith
  */
 public final class ConcurrentSQLBroker {
 
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(ConcurrentSQLBroker.class);
+
 	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
 
 	/** The SQLBroker to use for executing the queries                       */
@@ -19,89 +43,138 @@ public final class ConcurrentSQLBroker {
 
 	private final ThreadPool					pool;
 
-	private final ListArray<ConcurrentQuery>	queries;
+	/** Runs {@link AsyncCall}s on the {@link ThreadPool}					*/
+	private final Executor						executor;
 
-	private final Profiler						t;
+	/** The SQLBroker of each shard, reused so each keeps its cached {@link ResultShape}s	*/
+	private final MapHashed<PooledDataSource, SQLBroker>	shardBrokers;
 
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	public ConcurrentSQLBroker(final PooledDataSource dataSource, final ThreadPool threadPool) {
-		t = new Profiler("ConcurrentSQLBroker");
-		broker = new SQLBroker(dataSource);
-		queries = new ListArray<>();
-		pool = threadPool;
+		this(new SQLBroker(dataSource), threadPool);
 	}
 
-	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
-
-	public final void query(final String sql, final Parameters params) {
-		final ConcurrentQuery query = new ConcurrentQuery(sql, params);
-
-		if (!t.isRunning()) {
-			queries.clear();
-			t.start();
-		}
-
-		queries.add(query);
-		pool.execute(query);
+	public ConcurrentSQLBroker(final SQLBroker broker, final ThreadPool threadPool) {
+		this.broker = broker;
+		this.pool = threadPool;
+		this.executor = new Executor() {
+			@Override
+			public void execute(final Runnable r) {
+				pool.execute(r);
+			}
+		};
+		this.shardBrokers = new MapHashed<>();
+		shardBrokers.put(broker.getDataSource(), broker);
 	}
 
-	public final QueryResult[] getResults() throws InterruptedException {
-		final QueryResult[] results = new QueryResult[queries.getSize()];
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
 
-		int i=0;
-		for (ConcurrentQuery q : queries) {
-			results[i++] = q.getResults();
-		}
-		t.stop();
+	public final SQLBroker getBroker() {
+		return broker;
+	}
 
-		return results;
+	/**
+	 * Returns a new {@link QueryGroup} whose queries run concurrently on the
+	 * {@link ThreadPool}, at most as many at a time as its capacity.
+	 *
+	 * @return a new {@link QueryGroup}
+	 */
+	public final QueryGroup group() {
+		return new QueryGroup(broker, pool, pool.getCapacity());
 	}
 
-	public final long duration() {
-		return t.elapsed();
+	/**
+	 * Returns a new {@link QueryGroup} which runs at most
+	 * <code>maxConcurrency</code> of its queries at the same time.
+	 *
+	 * @param maxConcurrency the maximum number of queries to run at once
+	 * @return a new {@link QueryGroup}
+	 */
+	public final QueryGroup group(final int maxConcurrency) {
+		return new QueryGroup(broker, pool, Math.max(1, Math.min(maxConcurrency, pool.getCapacity())));
 	}
 
-	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+	public final <T> MergedStream<T> queryShards(final Select stmt, final Mapper<T> mapper, final Comparator<? super T> orderBy, final PooledDataSource... shards) {
+		return queryShards(stmt, mapper, orderBy, 0, shards);
+	}
 
-	private final class ConcurrentQuery implements Runnable {
+	/**
+	 * Runs the same {@link Select} against every shard in parallel and
+	 * returns a {@link MergedStream} that k-way merges the shard results by
+	 * <code>orderBy</code>. The {@link Select} must order its rows the same
+	 * way as the {@link Comparator} for the merge to be correct.
+	 *
+	 * If <code>limit</code> is greater than zero, it is pushed down to every
+	 * shard as <code>Statement.setMaxRows()</code> so that each shard returns
+	 * at most its top <code>limit</code> rows, and the merge stops after
+	 * <code>limit</code> rows. Rows are mapped lazily from each shard, so
+	 * nothing is buffered beyond the driver fetch size.
+	 *
+	 * @param stmt the {@link Select} to run on each shard
+	 * @param mapper the {@link Mapper} to apply to each row
+	 * @param orderBy the order the {@link Select} sorts its rows by
+	 * @param limit the maximum number of rows to return, or zero for all
+	 * @param shards the {@link PooledDataSource} of each shard
+	 * @return a {@link MergedStream} that must be fully read or closed
+	 */
+	public final <T> MergedStream<T> queryShards(final Select stmt, final Mapper<T> mapper, final Comparator<? super T> orderBy, final int limit,
+			final PooledDataSource... shards) {
+		final String sql = stmt.toString();
+		final Parameters params = stmt.getParams();
+
+		log.debug("Querying {P} shards with SQL query [{P}] and {P}, limit={P}", shards.length, sql, params, limit);
+
+		final ListArray<AsyncCall<QueryStream<T>>> calls = new ListArray<>(shards.length);
+		final ListArray<QueryStream<T>> streams = new ListArray<>(shards.length);
+
+		for (int i=0; i < shards.length; i++) {
+			final SQLBroker shard = getShardBroker(shards[i]);
+
+			calls.add(new AsyncCall<>(new Callable<QueryStream<T>>() {
+				public QueryStream<T> call() {
+					return shard.stream(sql, params, mapper, 0, limit);
+				}
+			}).pin(params).submit(executor, 0));
+		}
 
-		/** The SQL query to execute in its own Thread												*/
-		private final String sql;
+		try {
+			for (int i=0; i < calls.getSize(); i++) {
+				streams.add(calls.get(i).get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			for (int i=0; i < calls.getSize(); i++) {
+				if (i < streams.getSize()) {
+					streams.get(i).close();
+				} else if (!calls.get(i).abort()) {
+					try {
+						calls.get(i).get().close();
+					} catch (Exception x) {
+						// The call failed so there is nothing to close
+					}
+				}
+			}
 
-		/** The Parameters to use for executing the query											*/
-		private final Parameters params;
+			final Throwable t = (e instanceof ExecutionException) ? e.getCause() : e;
+			throw (t instanceof DatabaseException) ? (DatabaseException) t : new DatabaseException("Sharded query failed", t);
+		}
 
-		/** The results of the SQL query															*/
-		private QueryResult results;
+		return new MergedStream<>(streams, orderBy, limit);
+	}
 
-		private final Sync sync;
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
 
-		private ConcurrentQuery(final String sql, final Parameters params) {
-			this.sql = sql;
-			this.params = params;
-			sync = new Sync();
-		}
+	private SQLBroker getShardBroker(final PooledDataSource dataSource) {
+		synchronized (shardBrokers) {
+			SQLBroker b = shardBrokers.get(dataSource);
 
-		private QueryResult getResults() throws InterruptedException {
-			sync.lock();
-			try {
-				while (results == null) {
-					sync.await();
-				}
-			} finally {
-				sync.unlock();
+			if (b == null) {
+				b = new SQLBroker(dataSource);
+				shardBrokers.put(dataSource, b);
 			}
 
-			return results;
+			return b;
 		}
+	}
 
-		public void run() {
-			results = broker.query(sql, params);
-			sync.lock();
-			try { sync.signal(); } finally { sync.unlock(); }
-		}
-
-	}	// End ConcurrentQuery
-
-}
+}	// End ConcurrentSQLBroker
@@ -0,0 +1,74 @@
+package org.sqlbroker;
+
+import java.util.Locale;
+
+/**
+ * The SQL dialects SQLBroker writes vendor-specific statements for, such
+ * as the single statement upserts of {@link org.sqlbroker.helper.Upsert}.
+ * Any other database is {@link #GENERIC}, for which only standard SQL is
+ * written.
+ *
+ * @author esmith
+ */
+public enum Dialect {
+
+	/** <code>INSERT ... ON DUPLICATE KEY UPDATE</code>				*/
+	MYSQL,
+
+	/** <code>INSERT ... ON CONFLICT (...) DO UPDATE</code>			*/
+	POSTGRESQL,
+
+	/** <code>INSERT ... ON CONFLICT (...) DO UPDATE</code>, as of SQLite 3.24	*/
+	SQLITE,
+
+	/** <code>MERGE INTO ... KEY (...) VALUES</code>					*/
+	H2,
+
+	/** <code>MERGE INTO ... USING (SELECT ... FROM dual)</code>		*/
+	ORACLE,
+
+	/** <code>MERGE INTO ... USING (VALUES ...)</code>					*/
+	SQLSERVER,
+
+	GENERIC;
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the dialect of the database product name reported by
+	 * {@link java.sql.DatabaseMetaData#getDatabaseProductName()}.
+	 *
+	 * @param productName the database product name
+	 * @return the {@link Dialect}, or {@link #GENERIC} if it is unknown
+	 */
+	public static final Dialect of(final String productName) {
+		final String name = (productName == null) ? "" : productName.toLowerCase(Locale.ROOT);
+
+		if (name.contains("mysql") || name.contains("mariadb")) {
+			return MYSQL;
+		}
+
+		if (name.contains("postgres")) {
+			return POSTGRESQL;
+		}
+
+		if (name.contains("sqlite")) {
+			return SQLITE;
+		}
+
+		if (name.equals("h2")) {
+			return H2;
+		}
+
+		if (name.contains("oracle")) {
+			return ORACLE;
+		}
+
+		if (name.contains("microsoft sql server")) {
+			return SQLSERVER;
+		}
+
+		return GENERIC;
+	}
+
+}	// End Dialect
@@ -0,0 +1,170 @@
+package org.sqlbroker;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import root.adt.ListArray;
+import root.lang.Itemizer;
+
+/**
+ * Merges several {@link QueryStream}s that are each ordered by the same
+ * {@link Comparator} into one ordered stream using a k-way heap merge. Only
+ * the current head row of each stream is held in memory, so the merge is as
+ * lazy as the streams themselves. Rows that compare as equal are returned
+ * in stream order.
+ *
+ * Every {@link QueryStream} is closed once the merge is exhausted, the limit
+ * is reached, an exception occurs, or <code>close()</code> is called.
+ *
+ * @author esmith
+ *
+ * @param <T> The type each row is mapped to
+ */
+public final class MergedStream<T> implements Itemizer<T>, AutoCloseable {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** Keeps track of when <code>close()</code> is called				*/
+	private boolean isClosed;
+
+	/** The index of the row last returned by <code>next()</code>		*/
+	private int index;
+
+	/** The maximum number of rows to return, or zero for no limit		*/
+	private final int limit;
+
+	/** The merged streams												*/
+	private final ListArray<QueryStream<T>> streams;
+
+	/** The current head row of every stream that is not yet exhausted	*/
+	private final PriorityQueue<Head<T>> heap;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	MergedStream(final ListArray<QueryStream<T>> streams, final Comparator<? super T> orderBy, final int limit) {
+		this.index = -1;
+		this.limit = limit;
+		this.streams = streams;
+		this.heap = new PriorityQueue<>(Math.max(1, streams.getSize()), new Comparator<Head<T>>() {
+			@Override
+			public int compare(final Head<T> a, final Head<T> b) {
+				final int c = orderBy.compare(a.row, b.row);
+
+				return (c != 0) ? c : a.stream - b.stream;
+			}
+		});
+
+		try {
+			for (int i=0; i < streams.getSize(); i++) {
+				advance(new Head<T>(i));
+			}
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final boolean hasNext() {
+		if (isClosed) {
+			return false;
+		}
+
+		if (heap.isEmpty() || (limit > 0 && index + 1 >= limit)) {
+			close();
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public final T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		final Head<T> head = heap.poll();
+		final T row = head.row;
+		index++;
+
+		try {
+			advance(head);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+
+		return row;
+	}
+
+	@Override
+	public final void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final int getIndex() {
+		return index;
+	}
+
+	@Override
+	public final int getSize() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final Itemizer<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public final void reset() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final void close() {
+		if (!isClosed) {
+			isClosed = true;
+			heap.clear();
+
+			for (QueryStream<T> s : streams) {
+				if (s != null) {
+					s.close();
+				}
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private void advance(final Head<T> head) {
+		final QueryStream<T> s = streams.get(head.stream);
+
+		if (s.hasNext()) {
+			head.row = s.next();
+			heap.add(head);
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private static final class Head<T> {
+
+		/** The index of the stream the row came from					*/
+		private final int stream;
+
+		/** The current row of the stream								*/
+		private T row;
+
+		private Head(final int stream) {
+			this.stream = stream;
+		}
+
+	}	// End Head
+
+}	// End MergedStream
@@ -0,0 +1,304 @@
+package org.sqlbroker;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import root.cache.CacheTimedConcurrent;
+import root.cache.RootCache;
+import root.lang.Extractable;
+import root.lang.StringExtractor;
+
+/**
+ * Remembers for a short while the <code>exists()</code> calls of a SQLBroker
+ * that returned <code>false</code> and the <code>load()</code> calls that
+ * returned <code>null</code>, so that probing again for the same missing
+ * row does not cost another round trip. A miss is keyed by the SQL, the
+ * {@link Parameters}, and for <code>load()</code> the
+ * {@link org.sqlbroker.mapper.Mapper}, and is forgotten after its time to
+ * live or as soon as {@link TableChanges} reports a write to any table
+ * named in the <code>FROM</code> or <code>JOIN</code> clauses of the SQL.
+ * Queries whose tables cannot be told apart, such as those with a
+ * subquery, are never cached.
+ *
+ * Invalidation is done by bumping a generation counter per table, which
+ * every cached miss compares against the counters it was read under, so a
+ * write costs the same no matter how many misses are cached.
+ *
+ * With the Bloom filter enabled, each lookup is first checked against a
+ * filter of the keys cached so far, which lets the probes for keys that
+ * were never a miss skip the concurrent cache altogether. The filter is
+ * reset once it has taken twice the capacity of the cache and may
+ * occasionally lose a key under concurrent updates, which only costs the
+ * round trip the cache would have saved.
+ *
+ * @author esmith
+ */
+public final class NegativeCache implements Extractable, TableChanges.Listener {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	/** Marks a SQL query whose tables cannot be determined				*/
+	private static final String[] UNKNOWN = new String[0];
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The time to live of a cached miss in milliseconds				*/
+	private final long ttl;
+
+	/** The cached misses and the generations they were read under		*/
+	private final RootCache<QueryKey, long[]> cache;
+
+	/** The tables read by each SQL query, or UNKNOWN					*/
+	private final ConcurrentHashMap<String, String[]> tablesRead;
+
+	/** The write generation of each table read by a cached SQL query	*/
+	private final ConcurrentHashMap<String, AtomicLong> generations;
+
+	/** The generation of writes to unknown tables						*/
+	private final AtomicLong unknownGeneration;
+
+	/** The Bloom filter in front of the cache, or <code>null</code>	*/
+	private final Bloom bloom;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	NegativeCache(final int capacity, final long ttl, final boolean bloom) {
+		this.ttl = ttl;
+		this.cache = new CacheTimedConcurrent<>(capacity, ttl);
+		this.tablesRead = new ConcurrentHashMap<>();
+		this.generations = new ConcurrentHashMap<>();
+		this.unknownGeneration = new AtomicLong();
+		this.bloom = (bloom) ? new Bloom(capacity) : null;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+
+		TableChanges.subscribe(this, TableChanges.ALL_TABLES);
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Forgets every cached miss.
+	 */
+	public final void clear() {
+		unknownGeneration.incrementAndGet();
+		cache.clear();
+
+		if (bloom != null) {
+			bloom.clear();
+		}
+	}
+
+	public final int getCapacity() {
+		return cache.getCapacity();
+	}
+
+	public final long getHits() {
+		return hits.get();
+	}
+
+	public final long getMisses() {
+		return misses.get();
+	}
+
+	public final int getSize() {
+		return cache.getSize();
+	}
+
+	public final long getTtl() {
+		return ttl;
+	}
+
+	public final boolean isBloomFiltered() {
+		return bloom != null;
+	}
+
+	@Override
+	public final void tableChanged(final String table) {
+		final AtomicLong gen = (table.equals(TableChanges.ALL_TABLES)) ? unknownGeneration : generations.get(table);
+
+		if (gen != null) {
+			gen.incrementAndGet();
+		}
+	}
+
+	@Override
+	public final void extract(final StringExtractor extractor) {
+		extractor.append("NegativeCache [size=").append(cache.getSize());
+		extractor.append(", capacity=").append(cache.getCapacity());
+		extractor.append(", ttl=").append(ttl);
+		extractor.append(", bloom=").append(bloom != null);
+		extractor.append(", hits=").append(hits.get());
+		extractor.append(", misses=").append(misses.get());
+		extractor.append(']');
+	}
+
+	@Override
+	public final String toString() {
+		final StringExtractor chars = new StringExtractor(128);
+		extract(chars);
+		return chars.toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns <code>true</code> if the read is known to find no row.
+	 */
+	final boolean contains(final QueryKey key) {
+		if (bloom == null || bloom.mightContain(key.hashCode())) {
+			final long[] stamp = cache.get(key);
+
+			if (stamp != null) {
+				if (isCurrent(getTables(key.getSql()), stamp)) {
+					hits.incrementAndGet();
+					return true;
+				}
+
+				cache.remove(key);
+			}
+		}
+
+		misses.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Returns the generations of the tables read by the SQL query, to pass
+	 * to <code>put()</code> should the read find no row, or <code>null</code>
+	 * if the misses of the query cannot be cached. Must be called before the
+	 * read so that a write racing it invalidates the miss.
+	 */
+	final long[] getStamp(final String sql) {
+		final String[] tables = getTables(sql);
+
+		if (tables == UNKNOWN) {
+			return null;
+		}
+
+		final long[] stamp = new long[tables.length + 1];
+
+		stamp[0] = unknownGeneration.get();
+		for (int i=0; i < tables.length; i++) {
+			stamp[i + 1] = generations.get(tables[i]).get();
+		}
+
+		return stamp;
+	}
+
+	/**
+	 * Caches the miss of the read with the generations returned by
+	 * <code>getStamp()</code> before it was made.
+	 */
+	final void put(final QueryKey key, final long[] stamp) {
+		cache.put(key.detach(), stamp);
+
+		if (bloom != null) {
+			bloom.add(key.hashCode());
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the tables read by the SQL query, subscribing to the writes of
+	 * those seen for the first time.
+	 */
+	private String[] getTables(final String sql) {
+		String[] tables = tablesRead.get(sql);
+
+		if (tables == null) {
+			tables = TableChanges.tablesRead(sql);
+
+			if (tables == null) {
+				tables = UNKNOWN;
+			} else {
+				for (String t : tables) {
+					if (generations.putIfAbsent(t, new AtomicLong()) == null) {
+						TableChanges.subscribe(this, t);
+					}
+				}
+			}
+
+			tablesRead.put(sql, tables);
+		}
+
+		return tables;
+	}
+
+	/**
+	 * Returns <code>true</code> if no table read by the query was written
+	 * to since the stamp was taken.
+	 */
+	private boolean isCurrent(final String[] tables, final long[] stamp) {
+		if (stamp[0] != unknownGeneration.get()) {
+			return false;
+		}
+
+		for (int i=0; i < tables.length; i++) {
+			if (stamp[i + 1] != generations.get(tables[i]).get()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	/**
+	 * A Bloom filter of key hash codes probed at three bit positions derived
+	 * from the hash by double hashing.
+	 */
+	private static final class Bloom {
+
+		private final long[] bits;
+		private final int mask;
+		private final int limit;
+		private final AtomicLong adds;
+
+		private Bloom(final int capacity) {
+			final int size = Integer.highestOneBit(Math.max(capacity, 64) * 8 - 1) << 1;
+
+			this.bits = new long[size >>> 6];
+			this.mask = size - 1;
+			this.limit = capacity << 1;
+			this.adds = new AtomicLong();
+		}
+
+		private void add(final int hash) {
+			if (adds.incrementAndGet() > limit) {
+				clear();
+			}
+
+			final int h2 = (hash >>> 16) | 1;
+
+			for (int i=0, h = hash; i < 3; i++, h += h2) {
+				bits[(h & mask) >>> 6] |= 1L << h;
+			}
+		}
+
+		private void clear() {
+			adds.set(0);
+			Arrays.fill(bits, 0);
+		}
+
+		private boolean mightContain(final int hash) {
+			final int h2 = (hash >>> 16) | 1;
+
+			for (int i=0, h = hash; i < 3; i++, h += h2) {
+				if ((bits[(h & mask) >>> 6] & (1L << h)) == 0) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+	}	// End Bloom
+
+}	// End NegativeCache
@@ -0,0 +1,157 @@
+package org.sqlbroker;
+
+import root.log.Log;
+
+/**
+ * A per-thread pool of {@link Parameters} and {@link BatchParams} instances
+ * for hot request paths. Borrowing and releasing never synchronizes, and
+ * once every thread has warmed up its pool, steady-state traffic creates no
+ * parameter garbage at all.
+ *
+ * <pre>
+ * final Parameters params = ParameterPool.borrow(2).add(id).add(status);
+ * try {
+ *     return broker.load(sql, params, mapper);
+ * } finally {
+ *     ParameterPool.release(params);
+ * }
+ * </pre>
+ *
+ * An instance may be released on a different thread than it was borrowed
+ * on, in which case it joins the pool of the releasing thread. Parameters
+ * still pinned by an open {@link QueryResult}, {@link QueryStream}, or
+ * pending asynchronous call, and BatchParams still pinned by a pending
+ * <code>batchAsync()</code>, are never put back into a pool; they are left
+ * to the garbage collector instead so that nothing can overwrite them while
+ * they are in use.
+ *
+ * @author esmith
+ */
+public final class ParameterPool {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(ParameterPool.class);
+
+	/** The maximum number of idle instances of each kind per thread		*/
+	private static final int MAX_IDLE = 16;
+
+	private static final ThreadLocal<ParameterPool> pools = new ThreadLocal<ParameterPool>() {
+		@Override
+		protected ParameterPool initialValue() {
+			return new ParameterPool();
+		}
+	};
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	private int numParams;
+	private int numBatches;
+
+	private final Parameters[]	params;
+	private final BatchParams[]	batches;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	private ParameterPool() {
+		params = new Parameters[MAX_IDLE];
+		batches = new BatchParams[MAX_IDLE];
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Returns an empty {@link Parameters} from the pool of the current
+	 * thread, or a new one with room for <code>size</code> parameters if the
+	 * pool is empty.
+	 *
+	 * @param size the expected number of parameters
+	 * @return an empty {@link Parameters}
+	 */
+	public static final Parameters borrow(final int size) {
+		final ParameterPool pool = pools.get();
+
+		if (pool.numParams == 0) {
+			return new Parameters(size);
+		}
+
+		final Parameters p = pool.params[--pool.numParams];
+		pool.params[pool.numParams] = null;
+		p.isPooled = false;
+		return p;
+	}
+
+	/**
+	 * Returns an empty {@link BatchParams} from the pool of the current
+	 * thread, or a new one with room for <code>capacity</code> rows if the
+	 * pool is empty.
+	 *
+	 * @param capacity the expected number of rows
+	 * @return an empty {@link BatchParams}
+	 */
+	public static final BatchParams borrowBatch(final int capacity) {
+		final ParameterPool pool = pools.get();
+
+		if (pool.numBatches == 0) {
+			return new BatchParams(capacity);
+		}
+
+		final BatchParams b = pool.batches[--pool.numBatches];
+		pool.batches[pool.numBatches] = null;
+		b.isPooled = false;
+		return b;
+	}
+
+	/**
+	 * Clears the {@link Parameters} and returns it to the pool of the
+	 * current thread. The instance must not be used by the caller afterwards.
+	 *
+	 * @param p the {@link Parameters} to release
+	 * @throws IllegalStateException if the instance was already released
+	 */
+	public static final void release(final Parameters p) {
+		if (p.isPooled) {
+			throw new IllegalStateException("Parameters have already been released");
+		}
+
+		if (p.isPinned()) {
+			log.warn("Parameters released while still referenced by an open result or pending call, discarding {P}", p);
+			return;
+		}
+
+		final ParameterPool pool = pools.get();
+
+		if (pool.numParams < MAX_IDLE) {
+			p.clear();
+			p.isPooled = true;
+			pool.params[pool.numParams++] = p;
+		}
+	}
+
+	/**
+	 * Clears the {@link BatchParams} and returns it to the pool of the
+	 * current thread. The instance must not be used by the caller afterwards.
+	 *
+	 * @param b the {@link BatchParams} to release
+	 * @throws IllegalStateException if the instance was already released
+	 */
+	public static final void release(final BatchParams b) {
+		if (b.isPooled) {
+			throw new IllegalStateException("BatchParams have already been released");
+		}
+
+		if (b.isPinned()) {
+			log.warn("BatchParams released while still referenced by a pending call, discarding {P} rows", b.size);
+			return;
+		}
+
+		final ParameterPool pool = pools.get();
+
+		if (pool.numBatches < MAX_IDLE) {
+			b.clear();
+			b.isPooled = true;
+			pool.batches[pool.numBatches++] = b;
+		}
+	}
+
+}	// End ParameterPool
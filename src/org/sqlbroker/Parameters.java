@@ -15,16 +15,25 @@ import java.sql.SQLException;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-import root.adt.ListExtractable;
 import root.jdbc.SqlType;
 import root.lang.Extractable;
 import root.lang.StringExtractor;
+import root.util.Root;
 
 /**
  * - Does not include @Deprecated methods such as <code>void setUnicodeStream()</code>.
+ * - Parameters are kept in parallel arrays: a type tag per parameter, the raw bits of every primitive
+ *   value, and the references. Primitives, <code>null</code>s, and the common reference types are bound
+ *   straight from these arrays so adding and binding them allocates nothing. The less common types still
+ *   go through a {@link Value} stored in the reference array.
+ * - An instance can be <code>clear()</code>ed and refilled, or borrowed from and released to the
+ *   {@link ParameterPool}. While a {@link QueryResult}, {@link QueryStream}, or asynchronous call
+ *   still references an instance it is pinned and cannot be cleared.
  *
  * TODO:
  * 		+ Search for SQLException, there shouldn't be any until the Value classes (done)
@@ -34,333 +43,396 @@ import root.lang.StringExtractor;
  */
 public final class Parameters implements Extractable {
 
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final byte NULL			= 0;
+	private static final byte BOOLEAN		= 1;
+	private static final byte BYTE			= 2;
+	private static final byte SHORT			= 3;
+	private static final byte INT			= 4;
+	private static final byte LONG			= 5;
+	private static final byte FLOAT			= 6;
+	private static final byte DOUBLE		= 7;
+	private static final byte STRING		= 8;
+	private static final byte NSTRING		= 9;
+	private static final byte BIGDECIMAL	= 10;
+	private static final byte BYTES			= 11;
+	private static final byte TIME			= 12;
+	private static final byte TIMESTAMP		= 13;
+	private static final byte OBJECT		= 14;
+	private static final byte VALUE			= 15;
+
+	/** Maps the ordinal stored for a NULL parameter back to its {@link SqlType}	*/
+	private static final SqlType[] sqlTypes = SqlType.values();
+
+	/** Updates the pin count without allocating an atomic per instance	*/
+	private static final AtomicIntegerFieldUpdater<Parameters> pinUpdater = AtomicIntegerFieldUpdater.newUpdater(Parameters.class, "pins");
+
 	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
 
-	private int index;
-	private final ListExtractable<Value> values;
+	/** The number of parameters added									*/
+	private int size;
+
+	/** The type tag of each parameter									*/
+	private byte[] types;
+
+	/** The raw bits of each primitive parameter, or the {@link SqlType} ordinal of a NULL	*/
+	private long[] bits;
+
+	/** The reference of each non-primitive parameter, created on demand	*/
+	private Object[] refs;
+
+	/** The number of open results and calls still referencing this instance	*/
+	private volatile int pins;
+
+	/** Set while this instance sits idle in a {@link ParameterPool}	*/
+	boolean isPooled;
 
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	public Parameters(final int size) {
-		values = new ListExtractable<>(size);
+		types = new byte[Math.max(size, 1)];
+		bits = new long[types.length];
 	}
 
 	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
 
 	public final Parameters add(final Array a) {
-		index++;
-		values.add(new ArrayValue(index, a));
-		return this;
+		return addValue(new ArrayValue(size + 1, a));
 	}
 
 	public final Parameters addAsciiStream(final InputStream is) {
-		index++;
-		values.add(new AsciiStreamValue(index, is));
-		return this;
+		return addValue(new AsciiStreamValue(size + 1, is));
 	}
 
 	public final Parameters addAsciiStream(final InputStream is, final int length) {
-		index++;
-		values.add(new AsciiStreamValue(index, is, length));
-		return this;
+		return addValue(new AsciiStreamValue(size + 1, is, length));
 	}
 
 	public final Parameters add(final BigDecimal b) {
-		index++;
-		values.add((b == null) ? new NullValue(index, SqlType.DECIMAL) : new BigDecimalValue(index, b));
-		return this;
+		return (b == null) ? addNull(SqlType.DECIMAL) : addRef(BIGDECIMAL, b);
 	}
 
 	public final Parameters addBinaryStream(final InputStream is) {
-		index++;
-		values.add(new BinaryStreamValue(index, is));
-		return this;
+		return addValue(new BinaryStreamValue(size + 1, is));
 	}
 
 	public final Parameters addBinaryStream(final InputStream is, final int length) {
-		index++;
-		values.add(new BinaryStreamValue(index, is, length));
-		return this;
+		return addValue(new BinaryStreamValue(size + 1, is, length));
 	}
 
 	public final Parameters addBlob(final Blob b) {
-		index++;
-		values.add(new BlobValue(index, b));
-		return this;
+		return addValue(new BlobValue(size + 1, b));
 	}
 
 	public final Parameters addBlob(final InputStream is) {
-		index++;
-		values.add(new BlobValue(index, is));
-		return this;
+		return addValue(new BlobValue(size + 1, is));
 	}
 
 	public final Parameters addBlob(final InputStream is, final long length) {
-		index++;
-		values.add(new BlobValue(index, is, length));
-		return this;
+		return addValue(new BlobValue(size + 1, is, length));
 	}
 
 	public final Parameters add(final boolean b) {
-		index++;
-		values.add(new BooleanValue(index, b));
-		return this;
+		return addBits(BOOLEAN, b ? 1 : 0);
 	}
 
 	public final Parameters add(final Boolean b) {
-		index++;
-		values.add((b == null) ? new NullValue(index, SqlType.BOOLEAN) : new BooleanValue(index, b));
-		return this;
+		return (b == null) ? addNull(SqlType.BOOLEAN) : addBits(BOOLEAN, b ? 1 : 0);
 	}
 
 	public final Parameters add(final byte b) {
-		index++;
-		values.add(new ByteValue(index, b));
-		return this;
+		return addBits(BYTE, b);
 	}
 
 	public final Parameters add(final Byte b) {
-		index++;
-		values.add((b == null) ? new NullValue(index, SqlType.TINYINT) : new ByteValue(index, b));
-		return this;
+		return (b == null) ? addNull(SqlType.TINYINT) : addBits(BYTE, b);
 	}
 
 	public final Parameters add(final byte[] b) {
-		index++;
-		values.add((b == null) ? new NullValue(index, SqlType.BINARY) : new ByteArrayValue(index, b));
-		return this;
+		return (b == null) ? addNull(SqlType.BINARY) : addRef(BYTES, b);
 	}
 
 	public final Parameters addCharacterStream(final Reader reader) {
-		index++;
-		values.add(new CharacterStreamValue(index, reader));
-		return this;
+		return addValue(new CharacterStreamValue(size + 1, reader));
 	}
 
 	public final Parameters addCharacterStream(final Reader reader, final int length) {
-		index++;
-		values.add(new CharacterStreamValue(index, reader, length));
-		return this;
+		return addValue(new CharacterStreamValue(size + 1, reader, length));
 	}
 
 	public final Parameters addClob(final Clob c) {
-		index++;
-		values.add(new ClobValue(index, c));
-		return this;
+		return addValue(new ClobValue(size + 1, c));
 	}
 
 	public final Parameters addClob(final Reader reader) {
-		index++;
-		values.add(new ClobValue(index, reader));
-		return this;
+		return addValue(new ClobValue(size + 1, reader));
 	}
 
 	public final Parameters addClob(final Reader reader, final long length) {
-		index++;
-		values.add(new ClobValue(index, reader, length));
-		return this;
+		return addValue(new ClobValue(size + 1, reader, length));
 	}
 
 	public final Parameters add(final Date d) {
-		index++;
-		values.add((d == null) ? new NullValue(index, SqlType.DATE) : new DateValue(index, d));
-		return this;
+		return (d == null) ? addNull(SqlType.DATE) : addValue(new DateValue(size + 1, d));
 	}
 
 	public final Parameters add(final Date d, final Calendar cal) {
-		index++;
-		values.add((d == null) ? new NullValue(index, SqlType.DATE) : new DateValue(index, d, cal));
-		return this;
+		return (d == null) ? addNull(SqlType.DATE) : addValue(new DateValue(size + 1, d, cal));
 	}
 
 	public final Parameters add(final double d) {
-		index++;
-		values.add(new DoubleValue(index, d));
-		return this;
+		return addBits(DOUBLE, Double.doubleToRawLongBits(d));
 	}
 
 	public final Parameters add(final Double d) {
-		index++;
-		values.add((d == null) ? new NullValue(index, SqlType.DOUBLE) : new DoubleValue(index, d));
-		return this;
+		return (d == null) ? addNull(SqlType.DOUBLE) : addBits(DOUBLE, Double.doubleToRawLongBits(d));
 	}
 
 	public final Parameters add(final float f) {
-		index++;
-		values.add(new FloatValue(index, f));
-		return this;
+		return addBits(FLOAT, Float.floatToRawIntBits(f));
 	}
 
 	public final Parameters add(final Float f) {
-		index++;
-		values.add((f == null) ? new NullValue(index, SqlType.FLOAT) : new FloatValue(index, f));
-		return this;
+		return (f == null) ? addNull(SqlType.FLOAT) : addBits(FLOAT, Float.floatToRawIntBits(f));
 	}
 
 	public final Parameters add(final int i) {
-		index++;
-		values.add(new IntegerValue(index, i));
-		return this;
+		return addBits(INT, i);
 	}
 
 	public final Parameters add(final Integer i) {
-		index++;
-		values.add((i == null) ? new NullValue(index, SqlType.INTEGER) : new IntegerValue(index, i));
-		return this;
+		return (i == null) ? addNull(SqlType.INTEGER) : addBits(INT, i);
 	}
 
 	public final Parameters add(final long l) {
-		index++;
-		values.add(new LongValue(index, l));
-		return this;
+		return addBits(LONG, l);
 	}
 
 	public final Parameters add(final Long l) {
-		index++;
-		values.add((l == null) ? new NullValue(index, SqlType.BIGINT) : new LongValue(index, l));
-		return this;
+		return (l == null) ? addNull(SqlType.BIGINT) : addBits(LONG, l);
 	}
 
 	public final Parameters addNCharacterStream(final Reader reader) {
-		index++;
-		values.add(new NCharacterStreamValue(index, reader));
-		return this;
+		return addValue(new NCharacterStreamValue(size + 1, reader));
 	}
 
 	public final Parameters addNCharacterStream(final Reader reader, final long length) {
-		index++;
-		values.add(new NCharacterStreamValue(index, reader, length));
-		return this;
+		return addValue(new NCharacterStreamValue(size + 1, reader, length));
 	}
 
 	public final Parameters addNClob(final NClob c) {
-		index++;
-		values.add(new NClobValue(index, c));
-		return this;
+		return addValue(new NClobValue(size + 1, c));
 	}
 
 	public final Parameters addNClob(final Reader reader) {
-		index++;
-		values.add(new NClobValue(index, reader));
-		return this;
+		return addValue(new NClobValue(size + 1, reader));
 	}
 
 	public final Parameters addNClob(final Reader reader, final long length) {
-		index++;
-		values.add(new NClobValue(index, reader, length));
-		return this;
+		return addValue(new NClobValue(size + 1, reader, length));
 	}
 
 	public final Parameters addNString(final String s) {
-		index++;
-		values.add((s == null) ? new NullValue(index, SqlType.NVARCHAR) : new NStringValue(index, s));
-		return this;
+		return (s == null) ? addNull(SqlType.NVARCHAR) : addRef(NSTRING, s);
 	}
 
 	public final Parameters add(final Object o) {
-		index++;
-		values.add(new ObjectValue(index, o));
-		return this;
+		return addRef(OBJECT, o);
 	}
 
 	public final Parameters add(final Object o, final SqlType targetType) {
-		index++;
-		values.add(new ObjectValue(index, o, targetType));
-		return this;
+		return addValue(new ObjectValue(size + 1, o, targetType));
 	}
 
 	public final Parameters add(final Object o, final SqlType targetType, final int scale) {
-		index++;
-		values.add(new ObjectValue(index, o, targetType, scale));
-		return this;
+		return addValue(new ObjectValue(size + 1, o, targetType, scale));
 	}
 
 	public final Parameters add(final Object... objs) {
 		for (Object o : objs) {
-			index++;
-			values.add(new ObjectValue(index, o));
+			addRef(OBJECT, o);
 		}
 		return this;
 	}
 
 	public final Parameters add(final Ref r) {
-		index++;
-		values.add(new RefValue(index, r));
-		return this;
+		return addValue(new RefValue(size + 1, r));
 	}
 
 	public final Parameters add(final RowId r) {
-		index++;
-		values.add(new RowIdValue(index, r));
-		return this;
+		return addValue(new RowIdValue(size + 1, r));
 	}
 
 	public final Parameters add(final short s) {
-		index++;
-		values.add(new ShortValue(index, s));
-		return this;
+		return addBits(SHORT, s);
 	}
 
 	public final Parameters add(final Short s) {
-		index++;
-		values.add((s == null) ? new NullValue(index, SqlType.SMALLINT) : new ShortValue(index, s));
-		return this;
+		return (s == null) ? addNull(SqlType.SMALLINT) : addBits(SHORT, s);
 	}
 
 	public final Parameters add(final SQLXML s) {
-		index++;
-		values.add(new SQLXMLValue(index, s));
-		return this;
+		return addValue(new SQLXMLValue(size + 1, s));
 	}
 
 	public final Parameters add(final String s) {
-		index++;
-		values.add((s == null) ? new NullValue(index, SqlType.VARCHAR) : new StringValue(index, s));
-		return this;
+		return (s == null) ? addNull(SqlType.VARCHAR) : addRef(STRING, s);
 	}
 
 	public final Parameters add(final Time t) {
-		index++;
-		values.add((t == null) ? new NullValue(index, SqlType.TIME) : new TimeValue(index, t));
-		return this;
+		return (t == null) ? addNull(SqlType.TIME) : addRef(TIME, t);
 	}
 
 	public final Parameters add(final Time t, final Calendar cal) {
-		index++;
-		values.add((t == null) ? new NullValue(index, SqlType.TIME) : new TimeValue(index, t, cal));
-		return this;
+		return (t == null) ? addNull(SqlType.TIME) : addValue(new TimeValue(size + 1, t, cal));
 	}
 
 	public final Parameters add(final Timestamp t) {
-		index++;
-		values.add((t == null) ? new NullValue(index, SqlType.TIMESTAMP) : new TimestampValue(index, t));
-		return this;
+		return (t == null) ? addNull(SqlType.TIMESTAMP) : addRef(TIMESTAMP, t);
 	}
 
 	public final Parameters add(final Timestamp t, final Calendar cal) {
-		index++;
-		values.add((t == null) ? new NullValue(index, SqlType.TIMESTAMP) : new TimestampValue(index, t, cal));
-		return this;
+		return (t == null) ? addNull(SqlType.TIMESTAMP) : addValue(new TimestampValue(size + 1, t, cal));
 	}
 
 	public final Parameters add(final URL url) {
-		index++;
-		values.add(new URLValue(index, url));
+		return addValue(new URLValue(size + 1, url));
+	}
+
+	/**
+	 * Removes every parameter so the instance can be filled again, keeping
+	 * the capacity it has grown to.
+	 *
+	 * @return this instance
+	 * @throws IllegalStateException if a {@link QueryResult},
+	 * 		{@link QueryStream}, or asynchronous call still references it
+	 */
+	public final Parameters clear() {
+		if (pins > 0) {
+			throw new IllegalStateException("Parameters are still referenced by an open result or pending call");
+		}
+
+		if (refs != null) {
+			Arrays.fill(refs, 0, size, null);
+		}
+
+		size = 0;
 		return this;
 	}
 
 	public final int getSize() {
-		return values.getSize();
+		return size;
 	}
 
-	public final ListExtractable<Value> getValues() {
-		return values;
+	public final boolean isPinned() {
+		return pins > 0;
+	}
+
+	/**
+	 * Two {@link Parameters} are equal when they hold the same parameters in
+	 * the same order. Values are compared by content, except for streams,
+	 * LOBs, and the other JDBC objects, which are only equal to themselves.
+	 */
+	@Override
+	public final boolean equals(final Object o) {
+		if (o == this) {
+			return true;
+		}
+
+		if (!(o instanceof Parameters) || ((Parameters) o).size != size) {
+			return false;
+		}
+
+		final Parameters p = (Parameters) o;
+
+		for (int i=0; i < size; i++) {
+			if (types[i] != p.types[i]) {
+				return false;
+			}
+
+			switch (types[i]) {
+				case NULL:
+				case BOOLEAN:
+				case BYTE:
+				case SHORT:
+				case INT:
+				case LONG:
+				case FLOAT:
+				case DOUBLE:
+					if (bits[i] != p.bits[i]) {
+						return false;
+					}
+					break;
+				case BYTES:
+					if (!Arrays.equals((byte[]) refs[i], (byte[]) p.refs[i])) {
+						return false;
+					}
+					break;
+				default:
+					if (!Root.equals(refs[i], p.refs[i])) {
+						return false;
+					}
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public final int hashCode() {
+		int h = size;
+
+		for (int i=0; i < size; i++) {
+			h = 31 * h + types[i];
+
+			switch (types[i]) {
+				case NULL:
+				case BOOLEAN:
+				case BYTE:
+				case SHORT:
+				case INT:
+				case LONG:
+				case FLOAT:
+				case DOUBLE:
+					h = 31 * h + (int) (bits[i] ^ (bits[i] >>> 32));
+					break;
+				case BYTES:
+					h = 31 * h + Arrays.hashCode((byte[]) refs[i]);
+					break;
+				default:
+					h = 31 * h + Root.hashCode(refs[i]);
+			}
+		}
+
+		return h;
 	}
 
 	@Override
 	public final void extract(final StringExtractor extractor) {
-		extractor.append("Parameters:");
-		values.extract(extractor);
+		long b;
+
+		extractor.append("Parameters:[");
+		for (int i=0; i < size; i++) {
+			if (i > 0) {
+				extractor.addSeparator();
+			}
+
+			b = bits[i];
+			switch (types[i]) {
+				case NULL:		extractor.append(sqlTypes[(int) b]); break;
+				case BOOLEAN:	extractor.append(b != 0); break;
+				case BYTE:
+				case SHORT:
+				case INT:		extractor.append((int) b); break;
+				case LONG:		extractor.append(b); break;
+				case FLOAT:		extractor.append(Float.intBitsToFloat((int) b)); break;
+				case DOUBLE:	extractor.append(Double.longBitsToDouble(b)); break;
+				case VALUE:		extractor.append((Value) refs[i]); break;
+				default:		extractor.append(refs[i]);
+			}
+		}
+		extractor.append(']');
 	}
 
 	@Override
@@ -370,6 +442,112 @@ public final class Parameters implements Extractable {
 		return chars.toString();
 	}
 
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Binds every parameter to the {@link PreparedStatement}. Only the
+	 * {@link Value} parameters dispatch virtually, everything else is set
+	 * directly from the parallel arrays.
+	 */
+	final void bind(final PreparedStatement stmt) throws SQLException {
+		long b;
+
+		for (int i=0; i < size;) {
+			b = bits[i];
+
+			switch (types[i++]) {
+				case NULL:			stmt.setNull(i, sqlTypes[(int) b].getCode()); break;
+				case BOOLEAN:		stmt.setBoolean(i, b != 0); break;
+				case BYTE:			stmt.setByte(i, (byte) b); break;
+				case SHORT:			stmt.setShort(i, (short) b); break;
+				case INT:			stmt.setInt(i, (int) b); break;
+				case LONG:			stmt.setLong(i, b); break;
+				case FLOAT:			stmt.setFloat(i, Float.intBitsToFloat((int) b)); break;
+				case DOUBLE:		stmt.setDouble(i, Double.longBitsToDouble(b)); break;
+				case STRING:		stmt.setString(i, (String) refs[i-1]); break;
+				case NSTRING:		stmt.setNString(i, (String) refs[i-1]); break;
+				case BIGDECIMAL:	stmt.setBigDecimal(i, (BigDecimal) refs[i-1]); break;
+				case BYTES:			stmt.setBytes(i, (byte[]) refs[i-1]); break;
+				case TIME:			stmt.setTime(i, (Time) refs[i-1]); break;
+				case TIMESTAMP:		stmt.setTimestamp(i, (Timestamp) refs[i-1]); break;
+				case OBJECT:		stmt.setObject(i, refs[i-1]); break;
+				default:			((Value) refs[i-1]).setValue(stmt);
+			}
+		}
+	}
+
+	/**
+	 * Returns an unpinned copy of the parameters that is unaffected by any
+	 * later <code>clear()</code> or <code>add()</code> on this instance.
+	 */
+	final Parameters copy() {
+		final Parameters p = new Parameters(size);
+
+		System.arraycopy(types, 0, p.types, 0, size);
+		System.arraycopy(bits, 0, p.bits, 0, size);
+		if (refs != null) {
+			p.refs = Arrays.copyOf(refs, p.types.length);
+		}
+
+		p.size = size;
+		return p;
+	}
+
+	/**
+	 * Marks this instance as referenced by an open result or pending call.
+	 */
+	final void pin() {
+		pinUpdater.incrementAndGet(this);
+	}
+
+	final void unpin() {
+		pinUpdater.decrementAndGet(this);
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private Parameters addBits(final byte type, final long b) {
+		if (size == types.length) {
+			grow();
+		}
+
+		types[size] = type;
+		bits[size++] = b;
+		return this;
+	}
+
+	private Parameters addNull(final SqlType t) {
+		return addBits(NULL, t.ordinal());
+	}
+
+	private Parameters addRef(final byte type, final Object o) {
+		if (size == types.length) {
+			grow();
+		}
+
+		if (refs == null) {
+			refs = new Object[types.length];
+		}
+
+		types[size] = type;
+		refs[size++] = o;
+		return this;
+	}
+
+	private Parameters addValue(final Value v) {
+		return addRef(VALUE, v);
+	}
+
+	private void grow() {
+		final int capacity = size << 1;
+
+		types = Arrays.copyOf(types, capacity);
+		bits = Arrays.copyOf(bits, capacity);
+		if (refs != null) {
+			refs = Arrays.copyOf(refs, capacity);
+		}
+	}
+
 	// <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
 
 	abstract class Value implements Extractable {
@@ -438,27 +616,6 @@ public final class Parameters implements Extractable {
 
 	}	// End AsciiStreamValue
 
-	private final class BigDecimalValue extends Value {
-
-		private final BigDecimal b;
-
-		private BigDecimalValue(final int i, final BigDecimal b) {
-			super(i);
-			this.b = b;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setBigDecimal(i, b);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(b);
-		}
-
-	}	// End BigDecimalValue
-
 	private final class BinaryStreamValue extends Value {
 
 		private final int length;
@@ -543,69 +700,6 @@ public final class Parameters implements Extractable {
 
 	}	// End BlobValue
 
-	private final class BooleanValue extends Value {
-
-		private final boolean b;
-
-		private BooleanValue(final int i, final boolean b) {
-			super(i);
-			this.b = b;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setBoolean(i, b);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(b);
-		}
-
-	}	// End BooleanValue
-
-	private final class ByteValue extends Value {
-
-		private final byte b;
-
-		private ByteValue(final int i, final byte b) {
-			super(i);
-			this.b = b;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setByte(i, b);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(b);
-		}
-
-	}	// End ByteValue
-
-	private final class ByteArrayValue extends Value {
-
-		private final byte[] b;
-
-		private ByteArrayValue(final int i, final byte[] b) {
-			super(i);
-			this.b = b;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setBytes(i, b);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(b);
-		}
-
-	}	// End ByteArrayValue
-
 	private final class CharacterStreamValue extends Value {
 
 		private final int length;
@@ -721,91 +815,17 @@ public final class Parameters implements Extractable {
 			extractor.append(d);
 		}
 
-	}	// End DateValue
-
-	private final class DoubleValue extends Value {
-
-		private final double d;
-
-		private DoubleValue(final int i, final double d) {
-			super(i);
-			this.d = d;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setDouble(i, d);
-		}
-
 		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(d);
-		}
-
-	}	// End DoubleValue
-
-	private final class FloatValue extends Value {
-
-		private final float f;
-
-		private FloatValue(final int i, final float f) {
-			super(i);
-			this.f = f;
+		public final boolean equals(final Object o) {
+			return o instanceof DateValue && d.equals(((DateValue) o).d) && cal == ((DateValue) o).cal;
 		}
 
 		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setFloat(i, f);
+		public final int hashCode() {
+			return d.hashCode();
 		}
 
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(f);
-		}
-
-	}	// End FloatValue
-
-	private final class IntegerValue extends Value {
-
-		private final int j;
-
-		private IntegerValue(final int i, final int j) {
-			super(i);
-			this.j = j;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setInt(i, j);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(j);
-		}
-
-	}	// End IntegerValue
-
-	private final class LongValue extends Value {
-
-		private final long l;
-
-		private LongValue(final int i, final long l) {
-			super(i);
-			this.l = l;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setLong(i, l);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(l);
-		}
-
-	}	// End LongValue
+	}	// End DateValue
 
 	private final class NCharacterStreamValue extends Value {
 
@@ -891,48 +911,6 @@ public final class Parameters implements Extractable {
 
 	}	// End NClobValue
 
-	private final class NStringValue extends Value {
-
-		private final String s;
-
-		private NStringValue(final int i, final String s) {
-			super(i);
-			this.s = s;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setNString(i, s);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(s);
-		}
-
-	}	// End NStringValue
-
-	private final class NullValue extends Value {
-
-		private final SqlType t;
-
-		private NullValue(final int i, final SqlType t) {
-			super(i);
-			this.t = t;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setNull(i, t.getCode());
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(t);
-		}
-
-	}	// End NullValue
-
 	private final class ObjectValue extends Value {
 
 		private final Object o;
@@ -978,6 +956,22 @@ public final class Parameters implements Extractable {
 			extractor.append(o);
 		}
 
+		@Override
+		public final boolean equals(final Object o) {
+			if (!(o instanceof ObjectValue)) {
+				return false;
+			}
+
+			final ObjectValue v = (ObjectValue) o;
+
+			return Root.equals(this.o, v.o) && targetType == v.targetType && scale == v.scale;
+		}
+
+		@Override
+		public final int hashCode() {
+			return Root.hashCode(o);
+		}
+
 	}	// End ObjectValue
 
 	private final class RefValue extends Value {
@@ -1022,27 +1016,6 @@ public final class Parameters implements Extractable {
 
 	}	// End RowIdValue
 
-	private final class ShortValue extends Value {
-
-		private final short s;
-
-		private ShortValue(final int i, final short s) {
-			super(i);
-			this.s = s;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setShort(i, s);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(s);
-		}
-
-	}	// End ShortValue
-
 	private final class SQLXMLValue extends Value {
 
 		private final SQLXML s;
@@ -1064,27 +1037,6 @@ public final class Parameters implements Extractable {
 
 	}	// End SQLXMLValue
 
-	private final class StringValue extends Value {
-
-		private final String s;
-
-		private StringValue(final int i, final String s) {
-			super(i);
-			this.s = s;
-		}
-
-		@Override
-		public final void setValue(final PreparedStatement statement) throws SQLException {
-			statement.setString(i, s);
-		}
-
-		@Override
-		public final void extract(final StringExtractor extractor) {
-			extractor.append(s);
-		}
-
-	}	// End StringValue
-
 	private final class TimeValue extends Value {
 
 		private final Time t;
@@ -1116,6 +1068,16 @@ public final class Parameters implements Extractable {
 			extractor.append(t);
 		}
 
+		@Override
+		public final boolean equals(final Object o) {
+			return o instanceof TimeValue && t.equals(((TimeValue) o).t) && cal == ((TimeValue) o).cal;
+		}
+
+		@Override
+		public final int hashCode() {
+			return t.hashCode();
+		}
+
 	}	// End TimeValue
 
 	private final class TimestampValue extends Value {
@@ -1149,6 +1111,16 @@ public final class Parameters implements Extractable {
 			extractor.append(t);
 		}
 
+		@Override
+		public final boolean equals(final Object o) {
+			return o instanceof TimestampValue && t.equals(((TimestampValue) o).t) && cal == ((TimestampValue) o).cal;
+		}
+
+		@Override
+		public final int hashCode() {
+			return t.hashCode();
+		}
+
 	}	// End TimestampValue
 
 	private final class URLValue extends Value {
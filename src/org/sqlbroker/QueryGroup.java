@@ -0,0 +1,252 @@
+package org.sqlbroker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import root.adt.ListArray;
+import root.jdbc.DatabaseException;
+import root.lang.ParamString;
+import root.thread.ThreadPool;
+
+/**
+ * A scatter-gather group of SQL queries created by
+ * {@link ConcurrentSQLBroker#group()}. Queries are added with
+ * <code>query()</code>, dispatched together with <code>execute()</code>,
+ * and their {@link QueryResult}s are handed back by <code>next()</code> in
+ * the order the queries complete rather than the order they were added.
+ *
+ * At most <code>maxConcurrency</code> queries of the group run at the same
+ * time. Each worker thread keeps pulling queries off the group until none
+ * are left, so a large group never holds more threads or connections than
+ * that. If the group deadline elapses before every query has completed, the
+ * outstanding queries are cancelled through <code>Statement.cancel()</code>.
+ *
+ * A {@link QueryGroup} is meant to be used by the one thread that created
+ * it and cannot be reused once executed.
+ *
+ * @author esmith
+ */
+public final class QueryGroup {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The index of the query whose result was last returned			*/
+	private int index;
+
+	/** The number of completed queries handed back by <code>next()</code>	*/
+	private int numConsumed;
+
+	/** The deadline in <code>System.nanoTime()</code> terms, or zero		*/
+	private long deadline;
+
+	/** When <code>execute()</code> was called							*/
+	private long begin;
+
+	/** When the last query was handed back, or the group was cancelled	*/
+	private long end;
+
+	private boolean isExecuted;
+	private boolean isCancelled;
+
+	private final SQLBroker						broker;
+	private final ThreadPool					pool;
+	private final int							maxConcurrency;
+
+	/** The queries in the order they were added							*/
+	private final ListArray<AsyncCall<QueryResult>>	calls;
+
+	/** The queries not yet picked up by a worker							*/
+	private final ConcurrentLinkedQueue<AsyncCall<QueryResult>>	pending;
+
+	/** The queries in the order they completed							*/
+	private final LinkedBlockingQueue<AsyncCall<QueryResult>>		completed;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	QueryGroup(final SQLBroker broker, final ThreadPool pool, final int maxConcurrency) {
+		this.index = -1;
+		this.broker = broker;
+		this.pool = pool;
+		this.maxConcurrency = maxConcurrency;
+		this.calls = new ListArray<>();
+		this.pending = new ConcurrentLinkedQueue<>();
+		this.completed = new LinkedBlockingQueue<>();
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Adds a query to the group and returns its index, which is what
+	 * <code>getIndex()</code> reports once its result is returned.
+	 *
+	 * @param sql the SQL query
+	 * @param params the query {@link Parameters}
+	 * @return the index of the query within the group
+	 */
+	public final int query(final String sql, final Parameters params) {
+		if (isExecuted) {
+			throw new IllegalStateException("QueryGroup has already been executed");
+		}
+
+		final AsyncCall<QueryResult> call = new AsyncCall<>(new Callable<QueryResult>() {
+			public QueryResult call() {
+				return broker.query(sql, params);
+			}
+		}, completed).pin(params).index(calls.getSize());
+
+		calls.add(call);
+		return calls.getSize() - 1;
+	}
+
+	/**
+	 * Dispatches every query in the group. If <code>deadlineMillis</code> is
+	 * greater than zero, queries still outstanding that many milliseconds
+	 * from now are cancelled.
+	 *
+	 * @param deadlineMillis the group deadline, or zero for none
+	 */
+	public final void execute(final long deadlineMillis) {
+		if (isExecuted) {
+			throw new IllegalStateException("QueryGroup has already been executed");
+		}
+
+		isExecuted = true;
+		begin = System.nanoTime();
+		deadline = (deadlineMillis > 0) ? begin + TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : 0;
+
+		for (AsyncCall<QueryResult> c : calls) {
+			pending.add(c);
+		}
+
+		final int numWorkers = Math.min(calls.getSize(), maxConcurrency);
+		final Runnable worker = new Runnable() {
+			public void run() {
+				AsyncCall<QueryResult> c;
+
+				while ((c = pending.poll()) != null) {
+					c.run();
+				}
+			}
+		};
+
+		for (int i=0; i < numWorkers; i++) {
+			pool.execute(worker);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> while there are results left to return.
+	 */
+	public final boolean hasNext() {
+		return isExecuted && !isCancelled && numConsumed < calls.getSize();
+	}
+
+	/**
+	 * Waits for the next query to complete and returns its
+	 * {@link QueryResult}, which the caller must close. If that query failed,
+	 * a {@link DatabaseException} is thrown and <code>getIndex()</code>
+	 * identifies the query; the remaining results can still be retrieved.
+	 *
+	 * If the group deadline elapses first, every outstanding query is
+	 * cancelled and a {@link DatabaseException} is thrown.
+	 *
+	 * @return the {@link QueryResult} of the next completed query
+	 */
+	public final QueryResult next() throws InterruptedException {
+		if (!hasNext()) {
+			throw new IllegalStateException("No more results in QueryGroup");
+		}
+
+		final AsyncCall<QueryResult> c;
+
+		if (deadline == 0) {
+			c = completed.take();
+		} else {
+			c = completed.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+			if (c == null) {
+				final int outstanding = calls.getSize() - numConsumed;
+				cancel();
+				throw new DatabaseException(ParamString.formatMsg("QueryGroup deadline exceeded with {P} queries outstanding", outstanding));
+			}
+		}
+
+		numConsumed++;
+		if (numConsumed == calls.getSize()) {
+			end = System.nanoTime();
+		}
+
+		index = c.getIndex();
+
+		try {
+			return c.get();
+		} catch (CancellationException e) {
+			throw new DatabaseException("Query was cancelled", e);
+		} catch (ExecutionException e) {
+			final Throwable t = e.getCause();
+
+			throw (t instanceof DatabaseException) ? (DatabaseException) t : new DatabaseException("Query failed", t);
+		}
+	}
+
+	/**
+	 * Cancels every outstanding query and closes the {@link QueryResult}s
+	 * that have completed but were not yet returned by <code>next()</code>.
+	 */
+	public final void cancel() {
+		if (isCancelled) {
+			return;
+		}
+
+		isCancelled = true;
+		end = System.nanoTime();
+		pending.clear();
+
+		// The calls run on the ThreadPool, so they must not be interrupted
+		for (AsyncCall<QueryResult> c : calls) {
+			c.abort();
+		}
+
+		AsyncCall<QueryResult> c;
+		while ((c = completed.poll()) != null) {
+			if (!c.isCancelled()) {
+				try {
+					c.get().close();
+				} catch (Exception e) {
+					// Failed queries have nothing to close
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the query whose result was last returned by
+	 * <code>next()</code>.
+	 */
+	public final int getIndex() {
+		return index;
+	}
+
+	public final int getSize() {
+		return calls.getSize();
+	}
+
+	/**
+	 * Returns the elapsed time of the group in milliseconds, measured from
+	 * <code>execute()</code> until the last result was returned or the group
+	 * was cancelled. While the group is still running, the time elapsed so
+	 * far is returned.
+	 */
+	public final long duration() {
+		if (!isExecuted) {
+			return 0;
+		}
+
+		return TimeUnit.NANOSECONDS.toMillis(((end == 0) ? System.nanoTime() : end) - begin);
+	}
+
+}	// End QueryGroup
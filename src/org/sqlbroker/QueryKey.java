@@ -0,0 +1,98 @@
+package org.sqlbroker;
+
+import org.sqlbroker.mapper.Mapper;
+
+import root.util.Root;
+
+/**
+ * Identifies one read made through SQLBroker by the kind of read, its SQL,
+ * its {@link Parameters} compared by value, and its {@link Mapper} compared
+ * with <code>equals()</code>. Reads with equal keys return equal results
+ * as long as the tables they read from are not written to.
+ *
+ * The key only references the {@link Parameters}, so a key that outlives
+ * the read, such as one held by a {@link ResultCache}, must be made with
+ * <code>detach()</code> before the caller clears or reuses them.
+ *
+ * @author esmith
+ */
+final class QueryKey {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	static final int LOAD		= 1;
+	static final int LOAD_ALL	= 2;
+	static final int COUNT		= 3;
+	static final int EXISTS		= 4;
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	private final int			kind;
+	private final int			hash;
+	private final String		sql;
+	private final Parameters	params;
+	private final Mapper<?>		mapper;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	QueryKey(final int kind, final String sql, final Parameters params, final Mapper<?> mapper) {
+		this(kind, sql, params, mapper, ((kind * 31 + sql.hashCode()) * 31 + Root.hashCode(params)) * 31 + Root.hashCode(mapper));
+	}
+
+	private QueryKey(final int kind, final String sql, final Parameters params, final Mapper<?> mapper, final int hash) {
+		this.kind = kind;
+		this.sql = sql;
+		this.params = params;
+		this.mapper = mapper;
+		this.hash = hash;
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final boolean equals(final Object o) {
+		if (o == this) {
+			return true;
+		}
+
+		if (!(o instanceof QueryKey)) {
+			return false;
+		}
+
+		final QueryKey k = (QueryKey) o;
+
+		return hash == k.hash && kind == k.kind && sql.equals(k.sql) && Root.equals(params, k.params) && Root.equals(mapper, k.mapper);
+	}
+
+	@Override
+	public final int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public final String toString() {
+		return sql + ' ' + params;
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns an equal key holding its own copy of the {@link Parameters}.
+	 */
+	final QueryKey detach() {
+		return (params == null) ? this : new QueryKey(kind, sql, params.copy(), mapper, hash);
+	}
+
+	final int getKind() {
+		return kind;
+	}
+
+	final Parameters getParams() {
+		return params;
+	}
+
+	final String getSql() {
+		return sql;
+	}
+
+}	// End QueryKey
@@ -11,7 +11,6 @@ import java.sql.Date;
 import java.sql.NClob;
 import java.sql.Ref;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.RowId;
 import java.sql.SQLException;
 import java.sql.SQLXML;
@@ -21,7 +20,6 @@ import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Map;
 
-import root.adt.SetHashed;
 import root.jdbc.DatabaseException;
 import root.jdbc.PooledConnection;
 import root.lang.Itemizer;
@@ -35,7 +33,7 @@ import root.util.Jdbc;
  *
  * TODO Figure out how to remove all the throws SQLException (done)
  * TODO getDate() returns a java.sql.Date, make it return a java.util.Date instead
- * TODO Every time the columnLabelSet is checked and a label cannot be found, throw an exception instead of returning null
+ * TODO Every time a column label is looked up and a label cannot be found, throw an exception instead of returning null
  * 	- This enforces consistency between column labels used in SQL queries and column labels used in code
  *
  * @author esmith
@@ -59,23 +57,36 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	/** The wrapped {@link ResultSet}									*/
 	private final ResultSet			resultSet;
 
-	/** The set of column labels present on the {@link ResultSet}		*/
-	private final SetHashed<String> columnLabelSet;
+	/** The SQL query that produced the {@link ResultSet}				*/
+	private final String			sql;
+
+	/** Where the {@link ResultShape} of the SQL query is cached			*/
+	private final ShapeCache		shapes;
+
+	/** The column shape, looked up on the first label-based call		*/
+	private ResultShape				shape;
+
+	/** The {@link Parameters} pinned until <code>close()</code>, may be <code>null</code>	*/
+	private final Parameters		params;
 
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
-	QueryResult(final PooledConnection con, final Statement stmt, final ResultSet resultSet) throws SQLException {
+	QueryResult(final ShapeCache shapes, final String sql, final PooledConnection con, final Statement stmt, final ResultSet resultSet) {
+		this(shapes, sql, con, stmt, resultSet, null);
+	}
+
+	QueryResult(final ShapeCache shapes, final String sql, final PooledConnection con, final Statement stmt, final ResultSet resultSet,
+			final Parameters params) {
 		this.index = -1;
+		this.shapes = shapes;
+		this.sql = sql;
 		this.con = con;
 		this.stmt = stmt;
 		this.resultSet = resultSet;
+		this.params = params;
 
-		final ResultSetMetaData meta = resultSet.getMetaData();
-		final int numCols = meta.getColumnCount();
-
-		columnLabelSet = new SetHashed<>(numCols);
-		for (int i=0; i < numCols; ) {
-			columnLabelSet.add(meta.getColumnName(++i));
+		if (params != null) {
+			params.pin();
 		}
 	}
 
@@ -133,10 +144,54 @@ public final class QueryResult implements Itemizer<QueryResult> {
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * Drains the rows not yet iterated into a disconnected
+	 * {@link ResultSnapshot} and closes this result, releasing its
+	 * connection right away.
+	 *
+	 * @return a {@link ResultSnapshot} of the remaining rows
+	 */
+	public final ResultSnapshot snapshot() {
+		if (isClosed) {
+			throw new IllegalStateException("QueryResult is already closed");
+		}
+
+		try {
+			return ResultSnapshot.drain(getShape(), resultSet);
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Returns the column shape of the result, which is shared by every
+	 * execution of the same SQL query.
+	 *
+	 * @return the {@link ResultShape}
+	 */
+	public final ResultShape getShape() {
+		if (shape == null) {
+			try {
+				shape = shapes.get(sql, resultSet);
+			} catch (SQLException e) {
+				close();
+				throw new DatabaseException(e);
+			}
+		}
+
+		return shape;
+	}
+
 	public final void close() {
 		if (!isClosed) {
 			Jdbc.close(stmt, resultSet);
 			con.close();
+
+			if (params != null) {
+				params.unpin();
+			}
 		}
 
 		isClosed = true;
@@ -152,16 +207,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Array getArray(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getArray(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getArray(i);
 	}
 
 	public final InputStream getAsciiStream(final int columnIndex) {
@@ -174,16 +222,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final InputStream getAsciiStream(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getAsciiStream(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getAsciiStream(i);
 	}
 
 	public final BigDecimal getBigDecimal(final int columnIndex) {
@@ -196,16 +237,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final BigDecimal getBigDecimal(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getBigDecimal(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getBigDecimal(i);
 	}
 
 	public final InputStream getBinaryStream(final int columnIndex) {
@@ -218,16 +252,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final InputStream getBinaryStream(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getBinaryStream(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getBinaryStream(i);
 	}
 
 	public final Blob getBlob(final int columnIndex) {
@@ -240,16 +267,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Blob getBlob(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getBlob(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getBlob(i);
 	}
 
 	public final boolean getBoolean(final int columnIndex) {
@@ -262,16 +282,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final boolean getBoolean(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return false;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getBoolean(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return i != 0 && getBoolean(i);
 	}
 
 	public final Boolean getBooleanObject(final int columnIndex) {
@@ -286,18 +299,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Boolean getBooleanObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			final boolean b = resultSet.getBoolean(columnLabel);
-
-			return (resultSet.wasNull()) ? null : Boolean.valueOf(b);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getBooleanObject(i);
 	}
 
 	public final byte getByte(final int columnIndex) {
@@ -310,16 +314,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final byte getByte(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return 0;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getByte(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? 0 : getByte(i);
 	}
 
 	public final Byte getByteObject(final int columnIndex) {
@@ -334,18 +331,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Byte getByteObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
-
-		try {
-			final byte b = resultSet.getByte(columnLabel);
+		final int i = getShape().indexOf(columnLabel);
 
-			return (resultSet.wasNull()) ? null : Byte.valueOf(b);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getByteObject(i);
 	}
 
 	public final byte[] getBytes(final int columnIndex) {
@@ -358,16 +346,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final byte[] getBytes(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getBytes(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getBytes(i);
 	}
 
 	public final Reader getCharacterStream(final int columnIndex) {
@@ -380,16 +361,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Reader getCharacterStream(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getCharacterStream(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getCharacterStream(i);
 	}
 
 	public final Clob getClob(final int columnIndex) {
@@ -402,16 +376,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Clob getClob(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getClob(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getClob(i);
 	}
 
 	public final Date getDate(final int columnIndex) {
@@ -424,16 +391,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Date getDate(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getDate(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getDate(i);
 	}
 
 	public final Date getDate(final int columnIndex, final Calendar cal) {
@@ -446,16 +406,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Date getDate(final String columnLabel, final Calendar cal) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getDate(columnLabel, cal);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getDate(i, cal);
 	}
 
 	public final double getDouble(final int columnIndex) {
@@ -468,16 +421,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final double getDouble(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return 0;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getDouble(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? 0 : getDouble(i);
 	}
 
 	public final Double getDoubleObject(final int columnIndex) {
@@ -492,18 +438,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Double getDoubleObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			final double d = resultSet.getDouble(columnLabel);
-
-			return (resultSet.wasNull()) ? null : Double.valueOf(d);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getDoubleObject(i);
 	}
 
 	public final float getFloat(final int columnIndex) {
@@ -516,16 +453,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final float getFloat(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return 0;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getFloat(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? 0 : getFloat(i);
 	}
 
 	public final Float getFloatObject(final int columnIndex) {
@@ -540,18 +470,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Float getFloatObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
-
-		try {
-			final float f = resultSet.getFloat(columnLabel);
+		final int i = getShape().indexOf(columnLabel);
 
-			return (resultSet.wasNull()) ? null : Float.valueOf(f);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getFloatObject(i);
 	}
 
 	public final int getInt(final int columnIndex) {
@@ -564,16 +485,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final int getInt(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return 0;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getInt(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? 0 : getInt(i);
 	}
 
 	/**
@@ -605,18 +519,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Integer getIntObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			final int i = resultSet.getInt(columnLabel);
-
-			return (resultSet.wasNull()) ? null : Integer.valueOf(i);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getIntObject(i);
 	}
 
 	public final long getLong(final int columnIndex) {
@@ -629,16 +534,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final long getLong(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return 0;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getLong(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? 0 : getLong(i);
 	}
 
 	public final Long getLongObject(final int columnIndex) {
@@ -653,18 +551,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Long getLongObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			final long l = resultSet.getLong(columnLabel);
-
-			return (resultSet.wasNull()) ? null : Long.valueOf(l);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getLongObject(i);
 	}
 
 	public final Reader getNCharacterStream(final int columnIndex) {
@@ -677,16 +566,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Reader getNCharacterStream(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getNCharacterStream(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getNCharacterStream(i);
 	}
 
 	public final NClob getNClob(final int columnIndex) {
@@ -699,16 +581,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final NClob getNClob(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getNClob(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getNClob(i);
 	}
 
 	public final String getNString(final int columnIndex) {
@@ -721,16 +596,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final String getNString(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getNString(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getNString(i);
 	}
 
 	public final Object getObject(final int columnIndex) {
@@ -743,16 +611,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Object getObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getObject(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getObject(i);
 	}
 
 	public final Object getObject(final int columnIndex, final Map<String, Class<?>> map) {
@@ -765,16 +626,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Object getObject(final String columnLabel, final Map<String, Class<?>> map) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getObject(columnLabel, map);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getObject(i, map);
 	}
 
 	public final <T> T getObject(final int columnIndex, final Class<T> type) {
@@ -787,16 +641,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final <T> T getObject(final String columnLabel, final Class<T> type) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getObject(columnLabel, type);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getObject(i, type);
 	}
 
 	public final Ref getRef(final int columnIndex) {
@@ -809,16 +656,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Ref getRef(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getRef(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getRef(i);
 	}
 
 	public final RowId getRowId(final int columnIndex) {
@@ -831,16 +671,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final RowId getRowId(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getRowId(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getRowId(i);
 	}
 
 	public final short getShort(final int columnIndex) {
@@ -853,16 +686,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final short getShort(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return 0;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getShort(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? 0 : getShort(i);
 	}
 
 	public final Short getShortObject(final int columnIndex) {
@@ -877,18 +703,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Short getShortObject(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			final short s = resultSet.getShort(columnLabel);
-
-			return (resultSet.wasNull()) ? null : Short.valueOf(s);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getShortObject(i);
 	}
 
 	public final SQLXML getSQLXML(final int columnIndex) {
@@ -901,16 +718,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final SQLXML getSQLXML(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getSQLXML(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getSQLXML(i);
 	}
 
 	public final String getString(final int columnIndex) {
@@ -923,16 +733,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final String getString(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getString(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getString(i);
 	}
 
 	public final Time getTime(final int columnIndex) {
@@ -945,16 +748,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Time getTime(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getTime(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getTime(i);
 	}
 
 	public final Time getTime(final int columnIndex, final Calendar cal) {
@@ -967,16 +763,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Time getTime(final String columnLabel, final Calendar cal) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getTime(columnLabel, cal);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getTime(i, cal);
 	}
 
 	public final Timestamp getTimestamp(final int columnIndex) {
@@ -989,16 +778,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Timestamp getTimestamp(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getTimestamp(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getTimestamp(i);
 	}
 
 	public final Timestamp getTimestamp(final int columnIndex, final Calendar cal) {
@@ -1011,16 +793,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final Timestamp getTimestamp(final String columnLabel, final Calendar cal) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getTimestamp(columnLabel, cal);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getTimestamp(i, cal);
 	}
 
 	public final URL getURL(final int columnIndex) {
@@ -1033,16 +808,9 @@ public final class QueryResult implements Itemizer<QueryResult> {
 	}
 
 	public final URL getURL(final String columnLabel) {
-		if (!columnLabelSet.contains(columnLabel)) {
-			return null;
-		}
+		final int i = getShape().indexOf(columnLabel);
 
-		try {
-			return resultSet.getURL(columnLabel);
-		} catch (SQLException e) {
-			close();
-			throw new DatabaseException(e);
-		}
+		return (i == 0) ? null : getURL(i);
 	}
 
 }
@@ -0,0 +1,161 @@
+package org.sqlbroker;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+
+import org.sqlbroker.mapper.Mapper;
+
+import root.jdbc.DatabaseException;
+import root.jdbc.PooledConnection;
+import root.lang.Itemizer;
+import root.util.Jdbc;
+
+/**
+ * Lazily maps one row at a time from an open {@link ResultSet}, so memory
+ * use stays constant no matter how many rows the query returns. The
+ * {@link PooledConnection}, {@link PreparedStatement}, and {@link ResultSet}
+ * are released as soon as the last row is read, when an exception occurs,
+ * or when <code>close()</code> is called, whichever comes first. Use it in
+ * a try-with-resources block when the stream might not be fully consumed.
+ *
+ * Only use a {@link Mapper} that maps a single row, such as
+ * {@link org.sqlbroker.mapper.ColumnMapper} or
+ * {@link org.sqlbroker.mapper.RowMapper}.
+ *
+ * @author esmith
+ *
+ * @param <T> The type each row is mapped to
+ */
+public final class QueryStream<T> implements Itemizer<T>, AutoCloseable {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** Keeps track of when <code>close()</code> is called				*/
+	private boolean isClosed;
+
+	/** Set when the {@link ResultSet} is positioned on an unread row	*/
+	private boolean hasRow;
+
+	/** The index of the row last returned by <code>next()</code>		*/
+	private int index;
+
+	/** The SQL statement being streamed, used for error reporting		*/
+	private final String sql;
+
+	/** The {@link ResultShape} of the SQL query, resolved when opened	*/
+	private final ResultShape shape;
+
+	/** The {@link Parameters} pinned until <code>close()</code>		*/
+	private final Parameters params;
+
+	/** The {@link Mapper} that converts each row						*/
+	private final Mapper<T> mapper;
+
+	/** The {@link PooledConnection} that executed the SQL statement	*/
+	private final PooledConnection	con;
+
+	/** The {@link PreparedStatement} that created the {@link ResultSet}	*/
+	private final PreparedStatement	stmt;
+
+	/** The wrapped {@link ResultSet}									*/
+	private final ResultSet			resultSet;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	QueryStream(final ResultShape shape, final String sql, final Parameters params, final Mapper<T> mapper, final PooledConnection con, final PreparedStatement stmt,
+			final ResultSet resultSet) {
+		this.index = -1;
+		this.shape = shape;
+		this.sql = sql;
+		this.params = params;
+		this.mapper = mapper;
+		this.con = con;
+		this.stmt = stmt;
+		this.resultSet = resultSet;
+
+		params.pin();
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final boolean hasNext() {
+		if (isClosed) {
+			return false;
+		}
+
+		if (!hasRow) {
+			try {
+				hasRow = resultSet.next();
+			} catch (SQLException e) {
+				close();
+				throw new DatabaseException(sql, e);
+			}
+
+			if (!hasRow) {
+				close();
+			}
+		}
+
+		return hasRow;
+	}
+
+	@Override
+	public final T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		hasRow = false;
+		index++;
+
+		ResultShape.bind(resultSet, shape);
+		try {
+			return mapper.map(resultSet);
+		} catch (SQLException e) {
+			close();
+			throw new DatabaseException(sql, e);
+		} finally {
+			ResultShape.unbind();
+		}
+	}
+
+	@Override
+	public final void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final int getIndex() {
+		return index;
+	}
+
+	@Override
+	public final int getSize() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final Itemizer<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public final void reset() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final void close() {
+		if (!isClosed) {
+			isClosed = true;
+			hasRow = false;
+			Jdbc.close(stmt, resultSet);
+			con.close();
+			params.unpin();
+		}
+	}
+
+}	// End QueryStream
@@ -0,0 +1,94 @@
+package org.sqlbroker;
+
+import org.sqlbroker.balancer.Balancer;
+
+import root.jdbc.PooledDataSource;
+
+/**
+ * Marks the {@link root.jdbc.Transaction} of the current thread as
+ * read-only, which is what the {@link org.sqlbroker.proxy.TransactionProxy}
+ * does for the methods annotated with
+ * {@link org.sqlbroker.annotation.Txn#readOnly()}. A SQLBroker with
+ * replicas runs the whole of a read-only transaction on one replica
+ * chosen by its {@link Balancer} when the transaction makes its first
+ * call, on a connection marked read-only. Without replicas the transaction
+ * runs on the primary database as usual.
+ *
+ * Call <code>begin()</code> before the transaction begins and
+ * <code>end()</code> after it has been committed or rolled back.
+ *
+ * @author esmith
+ */
+public final class ReadOnly {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	/** The read-only scope of the current thread, if any				*/
+	private static final ThreadLocal<Scope> scope = new ThreadLocal<>();
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	private ReadOnly() {}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Marks the transaction about to begin on the current thread read-only.
+	 *
+	 * @throws IllegalStateException if a read-only scope is already active
+	 */
+	public static final void begin() {
+		if (scope.get() != null) {
+			throw new IllegalStateException("A read-only transaction is already active on this thread");
+		}
+
+		scope.set(new Scope());
+	}
+
+	/**
+	 * Ends the read-only scope of the current thread and hands the replica
+	 * it ran on back to its {@link Balancer}.
+	 */
+	public static final void end() {
+		final Scope s = scope.get();
+
+		if (s != null) {
+			scope.remove();
+
+			if (s.replica != null) {
+				s.balancer.release(s.replica);
+			}
+		}
+	}
+
+	public static final boolean isActive() {
+		return scope.get() != null;
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the replica of the read-only transaction of the current
+	 * thread, acquiring one from the {@link Balancer} on the first call.
+	 */
+	static final PooledDataSource getReplica(final Balancer balancer) {
+		final Scope s = scope.get();
+
+		if (s.replica == null) {
+			s.balancer = balancer;
+			s.replica = balancer.acquire();
+		}
+
+		return s.replica;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private static final class Scope {
+
+		private Balancer			balancer;
+		private PooledDataSource	replica;
+
+	}	// End Scope
+
+}	// End ReadOnly
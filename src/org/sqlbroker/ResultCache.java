@@ -0,0 +1,432 @@
+package org.sqlbroker;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import root.lang.Extractable;
+import root.lang.StringExtractor;
+import root.log.Log;
+
+/**
+ * Caches the results of the <code>load()</code>, <code>loadAll()</code>,
+ * <code>count()</code>, and <code>exists()</code> calls of a SQLBroker,
+ * keyed by their SQL, {@link Parameters}, and
+ * {@link org.sqlbroker.mapper.Mapper}. Only the SQL queries given a policy
+ * with <code>setPolicy()</code> are cached. A policy sets how long the
+ * results of the query live and which tables they are read from; every
+ * result of the query is dropped as soon as {@link TableChanges} reports a
+ * write to any of those tables.
+ *
+ * Invalidation is done by bumping a generation counter per table, which
+ * every cached result compares against the counters it was read under when
+ * it is looked up, so a write costs the same no matter how many results are
+ * cached. A result gone stale that is never looked up again keeps its room
+ * until it is evicted.
+ *
+ * The cache is bounded by the estimated size of the results in bytes
+ * rather than their number, so one large <code>loadAll()</code> takes the
+ * room of as many small lookups as it weighs. The least recently used
+ * results are evicted first, and a result weighing more than a quarter of
+ * the cache is not cached at all. The estimate is made from the strings,
+ * numbers, arrays, collections, and maps making up the result and assumes
+ * a fixed size for any other object.
+ *
+ * Every caller is handed the same cached object, which must therefore be
+ * treated as read-only.
+ *
+ * @author esmith
+ */
+public final class ResultCache implements Extractable, TableChanges.Listener {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(ResultCache.class);
+
+	/** The estimated weight of an object of unknown structure			*/
+	private static final int OBJECT_WEIGHT = 64;
+
+	/** The estimated weight of an entry and its key, excluding the result	*/
+	private static final int ENTRY_WEIGHT = 128;
+
+	/** The number of elements sampled to estimate a collection			*/
+	private static final int SAMPLE_SIZE = 8;
+
+	/** Stands in for a cached <code>null</code> result					*/
+	private static final Object NULL = new Object();
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The maximum estimated weight of the cached results in bytes	*/
+	private final long capacity;
+
+	/** The policy of each cached SQL query								*/
+	private final ConcurrentHashMap<String, Policy> policies;
+
+	/** The write generation of each table read by a cached SQL query	*/
+	private final ConcurrentHashMap<String, AtomicLong> generations;
+
+	/** The generation of writes to unknown tables						*/
+	private final AtomicLong unknownGeneration;
+
+	/** The cached results in least recently used order					*/
+	private final LinkedHashMap<QueryKey, Entry> entries;
+
+	/** The estimated weight of the cached results in bytes				*/
+	private long bytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	ResultCache(final long capacity) {
+		this.capacity = capacity;
+		this.policies = new ConcurrentHashMap<>();
+		this.generations = new ConcurrentHashMap<>();
+		this.unknownGeneration = new AtomicLong();
+		this.entries = new LinkedHashMap<>(64, 0.75f, true);
+
+		TableChanges.subscribe(this, TableChanges.ALL_TABLES);
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Removes every cached result.
+	 */
+	public final synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public final synchronized long getBytes() {
+		return bytes;
+	}
+
+	public final long getCapacity() {
+		return capacity;
+	}
+
+	public final synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache, or zero if
+	 * there were none.
+	 */
+	public final synchronized double getHitRatio() {
+		final long lookups = hits + misses;
+
+		return (lookups == 0) ? 0 : (double) hits / lookups;
+	}
+
+	public final synchronized long getHits() {
+		return hits;
+	}
+
+	public final synchronized long getMisses() {
+		return misses;
+	}
+
+	public final synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Caches the results of the SQL query for at most <code>ttlMillis</code>
+	 * milliseconds, or until a write to one of the tables. A query without
+	 * tables is only invalidated by writes to an unknown table.
+	 *
+	 * @param sql the SQL query to cache the results of
+	 * @param ttlMillis the time to live of each result, or zero for no limit
+	 * @param tables the tables the query reads from
+	 */
+	public final void setPolicy(final String sql, final long ttlMillis, final String... tables) {
+		final AtomicLong[] gens = new AtomicLong[tables.length];
+		String name;
+
+		for (int i=0; i < tables.length; i++) {
+			name = TableChanges.normalize(tables[i]);
+			gens[i] = generations.get(name);
+
+			if (gens[i] == null) {
+				final AtomicLong g = new AtomicLong();
+
+				gens[i] = generations.putIfAbsent(name, g);
+				if (gens[i] == null) {
+					gens[i] = g;
+					TableChanges.subscribe(this, name);
+				}
+			}
+		}
+
+		removePolicy(sql);
+		policies.put(sql, new Policy(ttlMillis, gens));
+	}
+
+	/**
+	 * Stops caching the results of the SQL query and drops the ones cached.
+	 *
+	 * @param sql the SQL query to stop caching
+	 */
+	public final void removePolicy(final String sql) {
+		if (policies.remove(sql) != null) {
+			synchronized (this) {
+				for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+					final Entry e = i.next();
+
+					if (e.key.getSql().equals(sql)) {
+						bytes -= e.bytes;
+						i.remove();
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public final void tableChanged(final String table) {
+		final AtomicLong gen = (table.equals(TableChanges.ALL_TABLES)) ? unknownGeneration : generations.get(table);
+
+		if (gen != null) {
+			gen.incrementAndGet();
+		}
+	}
+
+	@Override
+	public final synchronized void extract(final StringExtractor extractor) {
+		extractor.append("ResultCache [size=").append(entries.size());
+		extractor.append(", bytes=").append(bytes);
+		extractor.append(", capacity=").append(capacity);
+		extractor.append(", hits=").append(hits);
+		extractor.append(", misses=").append(misses);
+		extractor.append(", evictions=").append(evictions);
+		extractor.append(']');
+	}
+
+	@Override
+	public final String toString() {
+		final StringExtractor chars = new StringExtractor(160);
+		extract(chars);
+		return chars.toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the estimated weight of the object in bytes.
+	 */
+	static final long weigh(final Object o) {
+		return weigh(o, 2);
+	}
+
+	/**
+	 * Returns the cached result, or <code>this</code> if there is none since
+	 * <code>null</code> is a valid result. A result read before a write to
+	 * one of the tables of its policy is dropped as a miss.
+	 */
+	final synchronized Object get(final QueryKey key) {
+		final Entry e = entries.get(key);
+
+		if (e == null) {
+			misses++;
+			return this;
+		}
+
+		if ((e.expires != 0 && e.expires < System.currentTimeMillis()) || !isCurrent(e.policy, e.stamp)) {
+			bytes -= e.bytes;
+			entries.remove(key);
+			misses++;
+			return this;
+		}
+
+		hits++;
+		return (e.val == NULL) ? null : e.val;
+	}
+
+	/**
+	 * Returns the generations of the tables read under the policy, to pass
+	 * to <code>put()</code> once the read is made.
+	 */
+	final long[] getStamp(final Policy policy) {
+		final long[] stamp = new long[policy.tables.length + 1];
+
+		stamp[0] = unknownGeneration.get();
+		for (int i=0; i < policy.tables.length; i++) {
+			stamp[i + 1] = policy.tables[i].get();
+		}
+
+		return stamp;
+	}
+
+	/**
+	 * Returns the policy of the SQL query, or <code>null</code> if its
+	 * results are not cached.
+	 */
+	final Policy getPolicy(final String sql) {
+		return policies.get(sql);
+	}
+
+	/**
+	 * Caches the result unless one of the tables of the policy was written
+	 * to since <code>getStamp()</code> returned <code>stamp</code>, or the
+	 * policy was replaced, then evicts the least recently used results until
+	 * the cache fits its capacity.
+	 */
+	final void put(final QueryKey key, final Object val, final Policy policy, final long[] stamp) {
+		final long weight = ENTRY_WEIGHT + weigh(val);
+
+		if (weight > capacity >> 2) {
+			log.debug("Not caching the {P} byte result of {P}", weight, key);
+			return;
+		}
+
+		final Entry e = new Entry(key.detach(), (val == null) ? NULL : val, weight, (policy.ttl > 0) ? System.currentTimeMillis() + policy.ttl : 0, policy, stamp);
+
+		synchronized (this) {
+			if (!isCurrent(policy, stamp) || policies.get(key.getSql()) != policy) {
+				return;
+			}
+
+			final Entry old = entries.put(e.key, e);
+
+			if (old != null) {
+				bytes -= old.bytes;
+			}
+
+			bytes += weight;
+			for (Iterator<Entry> i = entries.values().iterator(); bytes > capacity && i.hasNext();) {
+				bytes -= i.next().bytes;
+				i.remove();
+				evictions++;
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns <code>true</code> if no table read under the policy was
+	 * written to since the stamp was taken.
+	 */
+	private boolean isCurrent(final Policy policy, final long[] stamp) {
+		if (stamp[0] != unknownGeneration.get()) {
+			return false;
+		}
+
+		for (int i=0; i < policy.tables.length; i++) {
+			if (stamp[i + 1] != policy.tables[i].get()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static long weigh(final Object o, final int depth) {
+		if (o == null) {
+			return 0;
+		}
+
+		if (o instanceof String) {
+			return 40 + 2L * ((String) o).length();
+		}
+
+		if (o instanceof Number || o instanceof Boolean || o instanceof Character || o instanceof Date) {
+			return 24;
+		}
+
+		if (o instanceof byte[]) {
+			return 16 + ((byte[]) o).length;
+		}
+
+		if (o instanceof Object[]) {
+			final Object[] a = (Object[]) o;
+
+			return 16 + 8L * a.length + sample(Arrays.asList(a), a.length, depth);
+		}
+
+		if (o instanceof Collection) {
+			final Collection<?> c = (Collection<?>) o;
+
+			return 32 + 8L * c.size() + sample(c, c.size(), depth);
+		}
+
+		if (o instanceof Map) {
+			final Map<?, ?> m = (Map<?, ?>) o;
+
+			return 48 + 32L * m.size() + sample(m.keySet(), m.size(), depth) + sample(m.values(), m.size(), depth);
+		}
+
+		return OBJECT_WEIGHT;
+	}
+
+	/**
+	 * Estimates the total weight of the elements from the first few.
+	 */
+	private static long sample(final Iterable<?> elements, final int size, final int depth) {
+		if (size == 0) {
+			return 0;
+		}
+
+		if (depth == 0) {
+			return (long) size * OBJECT_WEIGHT;
+		}
+
+		long sum = 0;
+		int n = 0;
+
+		for (Iterator<?> i = elements.iterator(); n < SAMPLE_SIZE && i.hasNext(); n++) {
+			sum += weigh(i.next(), depth - 1);
+		}
+
+		return sum * size / n;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	/**
+	 * How long the results of one SQL query live and the write generations
+	 * of the tables they are read from.
+	 */
+	static final class Policy {
+
+		private final long			ttl;
+		private final AtomicLong[]	tables;
+
+		private Policy(final long ttl, final AtomicLong[] tables) {
+			this.ttl = ttl;
+			this.tables = tables;
+		}
+
+	}	// End Policy
+
+	private static final class Entry {
+
+		private final QueryKey	key;
+		private final Object	val;
+		private final long		bytes;
+		private final long		expires;
+		private final Policy	policy;
+		private final long[]	stamp;
+
+		private Entry(final QueryKey key, final Object val, final long bytes, final long expires, final Policy policy, final long[] stamp) {
+			this.key = key;
+			this.val = val;
+			this.bytes = bytes;
+			this.expires = expires;
+			this.policy = policy;
+			this.stamp = stamp;
+		}
+
+	}	// End Entry
+
+}	// End ResultCache
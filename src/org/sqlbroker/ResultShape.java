@@ -0,0 +1,276 @@
+package org.sqlbroker;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * The column shape of a {@link ResultSet}: its column count and the label,
+ * SQL type, and precision of every column, along with a table that maps the
+ * column labels onto their column indexes. It is read once from the
+ * {@link ResultSetMetaData} and cached by SQLBroker per SQL query, so that
+ * repeated executions of the same query never walk the metadata again.
+ *
+ * Label lookups resolve with one hash probe so that label-based getters can
+ * go through the index-based driver calls. Both the label and, where it
+ * differs, the underlying column name of each column are mapped. When two
+ * columns share a label, the first one wins just like it does in
+ * <code>ResultSet.findColumn()</code>.
+ *
+ * While SQLBroker runs a {@link org.sqlbroker.mapper.Mapper}, the
+ * {@link ResultSet} is bound to the current thread along with its SQL so
+ * the mapper can use <code>columnCount()</code> and <code>findColumn()</code>
+ * instead of the driver metadata. The shape is only looked up once a mapper
+ * asks for it, so mappers that go by column index pay nothing.
+ *
+ * @author esmith
+ */
+public final class ResultShape {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	/** The {@link ResultSet} and shape bound to the current thread		*/
+	private static final ThreadLocal<Binding> binding = new ThreadLocal<Binding>() {
+		@Override
+		protected Binding initialValue() {
+			return new Binding();
+		}
+	};
+
+	/**
+	 * Returns the number of columns in the {@link ResultSet}, from its bound
+	 * shape if there is one or else from the driver metadata.
+	 *
+	 * @param rs the {@link ResultSet} being mapped
+	 * @return the number of columns
+	 */
+	public static final int columnCount(final ResultSet rs) throws SQLException {
+		final Binding b = binding.get();
+
+		return (b.rs == rs) ? b.getShape().columnCount : rs.getMetaData().getColumnCount();
+	}
+
+	/**
+	 * Returns the 1-based index of the column with the label, from the bound
+	 * shape if there is one. Otherwise, or if the shape does not know the
+	 * label, the driver resolves it through <code>ResultSet.findColumn()</code>.
+	 *
+	 * @param rs the {@link ResultSet} being mapped
+	 * @param label the column label
+	 * @return the 1-based column index
+	 */
+	public static final int findColumn(final ResultSet rs, final String label) throws SQLException {
+		final Binding b = binding.get();
+
+		if (b.rs == rs) {
+			final int i = b.getShape().indexOf(label);
+
+			if (i > 0) {
+				return i;
+			}
+		}
+
+		return rs.findColumn(label);
+	}
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The number of columns in the {@link ResultSet}					*/
+	private final int		columnCount;
+
+	/** The label of each column, indexed from zero						*/
+	private final String[]	labels;
+
+	/** The {@link java.sql.Types} code of each column, indexed from zero	*/
+	private final int[]		types;
+
+	/** The precision of each column, indexed from zero					*/
+	private final int[]		precisions;
+
+	/** Whether each numeric column is signed, indexed from zero		*/
+	private final boolean[]	signed;
+
+	/** The mask applied to a label hash to find its slot				*/
+	private final int		mask;
+
+	/** The label in each slot of the open addressing table				*/
+	private final String[]	keys;
+
+	/** The 1-based column index in each slot of the table				*/
+	private final int[]		columns;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	ResultShape(final ResultSetMetaData meta) throws SQLException {
+		columnCount = meta.getColumnCount();
+		labels = new String[columnCount];
+		types = new int[columnCount];
+		precisions = new int[columnCount];
+		signed = new boolean[columnCount];
+
+		// Room for a label and a name per column at no more than half full
+		int capacity = 4;
+		while (capacity < columnCount << 2) {
+			capacity <<= 1;
+		}
+
+		mask = capacity - 1;
+		keys = new String[capacity];
+		columns = new int[capacity];
+
+		for (int i=1; i <= columnCount; i++) {
+			labels[i-1] = meta.getColumnLabel(i);
+			types[i-1] = meta.getColumnType(i);
+			precisions[i-1] = meta.getPrecision(i);
+			signed[i-1] = meta.isSigned(i);
+			put(labels[i-1], i);
+		}
+
+		for (int i=1; i <= columnCount; i++) {
+			put(meta.getColumnName(i), i);
+		}
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	public final int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Returns the label of the 1-based column.
+	 */
+	public final String getColumnLabel(final int column) {
+		return labels[column - 1];
+	}
+
+	/**
+	 * Returns the {@link java.sql.Types} code of the 1-based column.
+	 */
+	public final int getColumnType(final int column) {
+		return types[column - 1];
+	}
+
+	/**
+	 * Returns the precision of the 1-based column.
+	 */
+	public final int getPrecision(final int column) {
+		return precisions[column - 1];
+	}
+
+	/**
+	 * Returns <code>true</code> if the values of the 1-based column can be
+	 * negative, which is <code>false</code> for a MySQL
+	 * <code>UNSIGNED</code> column.
+	 */
+	public final boolean isSigned(final int column) {
+		return signed[column - 1];
+	}
+
+	/**
+	 * Returns the 1-based index of the column with the label, or zero if the
+	 * {@link ResultSet} has no such column.
+	 */
+	public final int indexOf(final String label) {
+		if (label == null) {
+			return 0;
+		}
+
+		String k;
+
+		for (int slot = hash(label) & mask;; slot = (slot + 1) & mask) {
+			k = keys[slot];
+
+			if (k == null) {
+				return 0;
+			}
+
+			if (k == label || k.equals(label)) {
+				return columns[slot];
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Binds the {@link ResultSet} about to be mapped on the current thread to
+	 * the SQL query that produced it. It must be followed by
+	 * <code>unbind()</code>.
+	 */
+	static final void bind(final ShapeCache cache, final String sql, final ResultSet rs) {
+		final Binding b = binding.get();
+
+		b.cache = cache;
+		b.sql = sql;
+		b.rs = rs;
+		b.shape = null;
+	}
+
+	/**
+	 * Binds the {@link ResultSet} about to be mapped on the current thread to
+	 * its already resolved shape. It must be followed by <code>unbind()</code>.
+	 */
+	static final void bind(final ResultSet rs, final ResultShape shape) {
+		final Binding b = binding.get();
+
+		b.rs = rs;
+		b.shape = shape;
+	}
+
+	static final void unbind() {
+		final Binding b = binding.get();
+
+		b.cache = null;
+		b.sql = null;
+		b.rs = null;
+		b.shape = null;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private void put(final String label, final int column) {
+		if (label == null) {
+			return;
+		}
+
+		int slot = hash(label) & mask;
+
+		while (keys[slot] != null) {
+			if (keys[slot].equals(label)) {
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = label;
+		columns[slot] = column;
+	}
+
+	private static int hash(final String label) {
+		final int h = label.hashCode();
+
+		return h ^ (h >>> 16);
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private static final class Binding {
+
+		private ShapeCache	cache;
+		private String		sql;
+		private ResultSet	rs;
+		private ResultShape	shape;
+
+		private ResultShape getShape() throws SQLException {
+			if (shape == null) {
+				shape = cache.get(sql, rs);
+			}
+
+			return shape;
+		}
+
+	}	// End Binding
+
+}	// End ResultShape
@@ -0,0 +1,838 @@
+package org.sqlbroker;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import root.adt.MapHashed;
+import root.jdbc.DatabaseException;
+import root.lang.Itemizer;
+import root.lang.ParamString;
+
+/**
+ * A disconnected, column-oriented copy of a query result. The whole
+ * {@link ResultSet} is drained into memory as soon as the query executes and
+ * the connection goes straight back to the pool, so a slow consumer never
+ * holds on to a connection.
+ *
+ * Each column is stored by its SQL type: integral and boolean columns in an
+ * <code>int[]</code> or <code>long[]</code>, the next wider one for an
+ * unsigned column whose values would not fit, floating point columns in a
+ * <code>double[]</code>, character columns as dictionary codes into the
+ * distinct values of the column, and everything else as objects. Large
+ * objects are copied as a <code>String</code> or <code>byte[]</code> since
+ * their locators do not outlive the connection.
+ *
+ * The getters mirror those of {@link QueryResult} for the types that can be
+ * held in memory and follow the same rules: a missing column label yields
+ * <code>null</code>, zero, or <code>false</code>, and so does a SQL
+ * <code>NULL</code> for the primitive getters. Unlike a {@link QueryResult},
+ * a snapshot knows its size, supports random access through
+ * <code>setIndex()</code>, and can be <code>reset()</code> and iterated
+ * again. A snapshot is not thread safe while being iterated.
+ *
+ * @author esmith
+ */
+public final class ResultSnapshot implements Itemizer<ResultSnapshot> {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	/** The row capacity a snapshot starts out with						*/
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Drains every remaining row of the {@link ResultSet} into a new
+	 * snapshot. The caller is responsible for closing the {@link ResultSet}.
+	 */
+	static final ResultSnapshot drain(final ResultShape shape, final ResultSet rs) throws SQLException {
+		final int numCols = shape.getColumnCount();
+		final Column[] columns = new Column[numCols];
+
+		for (int i=0; i < numCols; i++) {
+			columns[i] = newColumn(shape.getColumnType(i + 1), shape.isSigned(i + 1), INITIAL_CAPACITY);
+		}
+
+		int numRows = 0;
+		int capacity = INITIAL_CAPACITY;
+
+		while (rs.next()) {
+			if (numRows == capacity) {
+				capacity <<= 1;
+				for (Column c : columns) {
+					c.grow(capacity);
+				}
+			}
+
+			for (int i=0; i < numCols; i++) {
+				columns[i].read(rs, i + 1, numRows);
+			}
+
+			numRows++;
+		}
+
+		for (Column c : columns) {
+			c.seal();
+		}
+
+		return new ResultSnapshot(shape, columns, numRows);
+	}
+
+	/**
+	 * Returns the column storing values of the SQL type. An unsigned
+	 * <code>INTEGER</code> goes past <code>Integer.MAX_VALUE</code> and is
+	 * stored as a <code>long</code>, and an unsigned <code>BIGINT</code> as
+	 * the object the driver returns.
+	 */
+	private static Column newColumn(final int sqlType, final boolean signed, final int capacity) {
+		switch (sqlType) {
+			case Types.BIT:
+			case Types.BOOLEAN:
+			case Types.TINYINT:
+			case Types.SMALLINT:
+				return new IntColumn(sqlType, capacity);
+			case Types.INTEGER:
+				return (signed) ? new IntColumn(sqlType, capacity) : new LongColumn(sqlType, capacity);
+			case Types.BIGINT:
+				return (signed) ? new LongColumn(sqlType, capacity) : new ObjectColumn(sqlType, capacity);
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return new DoubleColumn(sqlType, capacity);
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+			case Types.CLOB:
+			case Types.NCLOB:
+				return new StringColumn(sqlType, capacity);
+			default:
+				return new ObjectColumn(sqlType, capacity);
+		}
+	}
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The current row, or -1 before the first call to <code>next()</code>	*/
+	private int index;
+
+	/** The number of rows in the snapshot								*/
+	private final int				size;
+
+	/** The column shape of the snapshot								*/
+	private final ResultShape		shape;
+
+	/** The values of each column, indexed from zero						*/
+	private final Column[]			columns;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	private ResultSnapshot(final ResultShape shape, final Column[] columns, final int size) {
+		this.index = -1;
+		this.shape = shape;
+		this.columns = columns;
+		this.size = size;
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final boolean hasNext() {
+		return index + 1 < size;
+	}
+
+	@Override
+	public final ResultSnapshot next() {
+		if (index + 1 >= size) {
+			throw new NoSuchElementException();
+		}
+
+		index++;
+		return this;
+	}
+
+	@Override
+	public final void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public final int getIndex() {
+		return index;
+	}
+
+	@Override
+	public final int getSize() {
+		return size;
+	}
+
+	@Override
+	public final Itemizer<ResultSnapshot> iterator() {
+		return this;
+	}
+
+	@Override
+	public final void reset() {
+		index = -1;
+	}
+
+	/**
+	 * Positions the snapshot on the row with the 0-based index.
+	 *
+	 * @param index the row to move to
+	 * @return this snapshot
+	 */
+	public final ResultSnapshot setIndex(final int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(ParamString.formatMsg("Row {P} is out of bounds for a snapshot of {P} rows", index, size));
+		}
+
+		this.index = index;
+		return this;
+	}
+
+	public final ResultShape getShape() {
+		return shape;
+	}
+
+	public final boolean isNull(final int columnIndex) {
+		return column(columnIndex).isNull(index);
+	}
+
+	public final boolean isNull(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return i == 0 || isNull(i);
+	}
+
+	public final BigDecimal getBigDecimal(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : c.getBigDecimal(index);
+	}
+
+	public final BigDecimal getBigDecimal(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getBigDecimal(i);
+	}
+
+	public final boolean getBoolean(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return !c.isNull(index) && c.getBoolean(index);
+	}
+
+	public final boolean getBoolean(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return i != 0 && getBoolean(i);
+	}
+
+	public final Boolean getBooleanObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Boolean.valueOf(c.getBoolean(index));
+	}
+
+	public final Boolean getBooleanObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getBooleanObject(i);
+	}
+
+	public final byte getByte(final int columnIndex) {
+		return (byte) getLong(columnIndex);
+	}
+
+	public final byte getByte(final String columnLabel) {
+		return (byte) getLong(columnLabel);
+	}
+
+	public final Byte getByteObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Byte.valueOf((byte) c.getLong(index));
+	}
+
+	public final Byte getByteObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getByteObject(i);
+	}
+
+	public final byte[] getBytes(final int columnIndex) {
+		return as(columnIndex, byte[].class);
+	}
+
+	public final byte[] getBytes(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getBytes(i);
+	}
+
+	public final Date getDate(final int columnIndex) {
+		final java.util.Date d = as(columnIndex, java.util.Date.class);
+
+		return (d == null || d instanceof Date) ? (Date) d : new Date(d.getTime());
+	}
+
+	public final Date getDate(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getDate(i);
+	}
+
+	public final double getDouble(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? 0 : c.getDouble(index);
+	}
+
+	public final double getDouble(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? 0 : getDouble(i);
+	}
+
+	public final Double getDoubleObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Double.valueOf(c.getDouble(index));
+	}
+
+	public final Double getDoubleObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getDoubleObject(i);
+	}
+
+	public final float getFloat(final int columnIndex) {
+		return (float) getDouble(columnIndex);
+	}
+
+	public final float getFloat(final String columnLabel) {
+		return (float) getDouble(columnLabel);
+	}
+
+	public final Float getFloatObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Float.valueOf((float) c.getDouble(index));
+	}
+
+	public final Float getFloatObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getFloatObject(i);
+	}
+
+	public final int getInt(final int columnIndex) {
+		return (int) getLong(columnIndex);
+	}
+
+	public final int getInt(final String columnLabel) {
+		return (int) getLong(columnLabel);
+	}
+
+	/**
+	 * Returns an <code>int[]</code> based on the column labels submitted.
+	 *
+	 * @param columnLabels The column labels.
+	 * @return an <code>int[]</code> based on the column labels submitted.
+	 */
+	public final int[] getIntArray(final String... columnLabels) {
+		final int[] ints = new int[columnLabels.length];
+
+		int i=0;
+		for (String s : columnLabels) {
+			ints[i++] = getInt(s);
+		}
+
+		return ints;
+	}
+
+	public final Integer getIntObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Integer.valueOf((int) c.getLong(index));
+	}
+
+	public final Integer getIntObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getIntObject(i);
+	}
+
+	public final long getLong(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? 0 : c.getLong(index);
+	}
+
+	public final long getLong(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? 0 : getLong(i);
+	}
+
+	public final Long getLongObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Long.valueOf(c.getLong(index));
+	}
+
+	public final Long getLongObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getLongObject(i);
+	}
+
+	public final String getNString(final int columnIndex) {
+		return getString(columnIndex);
+	}
+
+	public final String getNString(final String columnLabel) {
+		return getString(columnLabel);
+	}
+
+	public final Object getObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : c.getObject(index);
+	}
+
+	public final Object getObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getObject(i);
+	}
+
+	public final short getShort(final int columnIndex) {
+		return (short) getLong(columnIndex);
+	}
+
+	public final short getShort(final String columnLabel) {
+		return (short) getLong(columnLabel);
+	}
+
+	public final Short getShortObject(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : Short.valueOf((short) c.getLong(index));
+	}
+
+	public final Short getShortObject(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getShortObject(i);
+	}
+
+	public final String getString(final int columnIndex) {
+		final Column c = column(columnIndex);
+
+		return c.isNull(index) ? null : c.getString(index);
+	}
+
+	public final String getString(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getString(i);
+	}
+
+	public final Time getTime(final int columnIndex) {
+		final java.util.Date d = as(columnIndex, java.util.Date.class);
+
+		return (d == null || d instanceof Time) ? (Time) d : new Time(d.getTime());
+	}
+
+	public final Time getTime(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getTime(i);
+	}
+
+	public final Timestamp getTimestamp(final int columnIndex) {
+		final java.util.Date d = as(columnIndex, java.util.Date.class);
+
+		return (d == null || d instanceof Timestamp) ? (Timestamp) d : new Timestamp(d.getTime());
+	}
+
+	public final Timestamp getTimestamp(final String columnLabel) {
+		final int i = shape.indexOf(columnLabel);
+
+		return (i == 0) ? null : getTimestamp(i);
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private Column column(final int columnIndex) {
+		if (index < 0) {
+			throw new IllegalStateException("The snapshot is not positioned on a row");
+		}
+
+		return columns[columnIndex - 1];
+	}
+
+	private <T> T as(final int columnIndex, final Class<T> type) {
+		final Object o = getObject(columnIndex);
+
+		if (o == null || type.isInstance(o)) {
+			return type.cast(o);
+		}
+
+		throw new DatabaseException(ParamString.formatMsg("Column {P} holds a {P} which is not a {P}", columnIndex, o.getClass().getName(), type.getName()));
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	/**
+	 * The values of one column along with a bitmap of its <code>NULL</code>s.
+	 * Conversions between types follow what JDBC drivers commonly allow.
+	 */
+	private abstract static class Column {
+
+		/** The {@link Types} code of the column							*/
+		protected final int sqlType;
+
+		/** One bit per row, set where the value is <code>NULL</code>		*/
+		private long[] nulls;
+
+		Column(final int sqlType, final int capacity) {
+			this.sqlType = sqlType;
+			this.nulls = new long[(capacity + 63) >>> 6];
+		}
+
+		final boolean isNull(final int row) {
+			return (nulls[row >>> 6] & (1L << row)) != 0;
+		}
+
+		final void setNull(final int row) {
+			nulls[row >>> 6] |= 1L << row;
+		}
+
+		void grow(final int capacity) {
+			nulls = Arrays.copyOf(nulls, (capacity + 63) >>> 6);
+		}
+
+		/** Releases whatever was only needed while the column was filled	*/
+		void seal() {}
+
+		abstract void read(ResultSet rs, int column, int row) throws SQLException;
+
+		abstract Object getObject(int row);
+
+		boolean getBoolean(final int row) {
+			return getLong(row) != 0;
+		}
+
+		long getLong(final int row) {
+			final Object o = getObject(row);
+
+			return (o instanceof Number) ? ((Number) o).longValue() : Long.parseLong(o.toString().trim());
+		}
+
+		double getDouble(final int row) {
+			final Object o = getObject(row);
+
+			return (o instanceof Number) ? ((Number) o).doubleValue() : Double.parseDouble(o.toString().trim());
+		}
+
+		BigDecimal getBigDecimal(final int row) {
+			final Object o = getObject(row);
+
+			return (o instanceof BigDecimal) ? (BigDecimal) o : new BigDecimal(o.toString().trim());
+		}
+
+		String getString(final int row) {
+			return getObject(row).toString();
+		}
+
+	}	// End Column
+
+	private static final class IntColumn extends Column {
+
+		private int[] values;
+
+		IntColumn(final int sqlType, final int capacity) {
+			super(sqlType, capacity);
+			values = new int[capacity];
+		}
+
+		@Override
+		final void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		final void read(final ResultSet rs, final int column, final int row) throws SQLException {
+			values[row] = (sqlType == Types.BIT || sqlType == Types.BOOLEAN) ? (rs.getBoolean(column) ? 1 : 0) : rs.getInt(column);
+
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		final Object getObject(final int row) {
+			return (sqlType == Types.BIT || sqlType == Types.BOOLEAN) ? Boolean.valueOf(values[row] != 0) : Integer.valueOf(values[row]);
+		}
+
+		@Override
+		final long getLong(final int row) {
+			return values[row];
+		}
+
+		@Override
+		final double getDouble(final int row) {
+			return values[row];
+		}
+
+		@Override
+		final BigDecimal getBigDecimal(final int row) {
+			return BigDecimal.valueOf(values[row]);
+		}
+
+	}	// End IntColumn
+
+	private static final class LongColumn extends Column {
+
+		private long[] values;
+
+		LongColumn(final int sqlType, final int capacity) {
+			super(sqlType, capacity);
+			values = new long[capacity];
+		}
+
+		@Override
+		final void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		final void read(final ResultSet rs, final int column, final int row) throws SQLException {
+			values[row] = rs.getLong(column);
+
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		final Object getObject(final int row) {
+			return Long.valueOf(values[row]);
+		}
+
+		@Override
+		final long getLong(final int row) {
+			return values[row];
+		}
+
+		@Override
+		final double getDouble(final int row) {
+			return values[row];
+		}
+
+		@Override
+		final BigDecimal getBigDecimal(final int row) {
+			return BigDecimal.valueOf(values[row]);
+		}
+
+	}	// End LongColumn
+
+	private static final class DoubleColumn extends Column {
+
+		private double[] values;
+
+		DoubleColumn(final int sqlType, final int capacity) {
+			super(sqlType, capacity);
+			values = new double[capacity];
+		}
+
+		@Override
+		final void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		final void read(final ResultSet rs, final int column, final int row) throws SQLException {
+			values[row] = rs.getDouble(column);
+
+			if (rs.wasNull()) {
+				setNull(row);
+			}
+		}
+
+		@Override
+		final Object getObject(final int row) {
+			return (sqlType == Types.REAL) ? (Object) Float.valueOf((float) values[row]) : Double.valueOf(values[row]);
+		}
+
+		@Override
+		final boolean getBoolean(final int row) {
+			return values[row] != 0;
+		}
+
+		@Override
+		final long getLong(final int row) {
+			return (long) values[row];
+		}
+
+		@Override
+		final double getDouble(final int row) {
+			return values[row];
+		}
+
+		@Override
+		final BigDecimal getBigDecimal(final int row) {
+			return BigDecimal.valueOf(values[row]);
+		}
+
+		@Override
+		final String getString(final int row) {
+			return (sqlType == Types.REAL) ? String.valueOf((float) values[row]) : String.valueOf(values[row]);
+		}
+
+	}	// End DoubleColumn
+
+	/**
+	 * Stores each value as a code into the distinct values of the column, so
+	 * repeated values such as statuses or country codes are kept only once.
+	 */
+	private static final class StringColumn extends Column {
+
+		private int[] codes;
+
+		private int numDistinct;
+
+		private String[] distinct;
+
+		/** Maps each distinct value onto its code while the column is filled	*/
+		private MapHashed<String, Integer> dictionary;
+
+		StringColumn(final int sqlType, final int capacity) {
+			super(sqlType, capacity);
+			codes = new int[capacity];
+			distinct = new String[16];
+			dictionary = new MapHashed<>();
+		}
+
+		@Override
+		final void grow(final int capacity) {
+			super.grow(capacity);
+			codes = Arrays.copyOf(codes, capacity);
+		}
+
+		@Override
+		final void seal() {
+			distinct = Arrays.copyOf(distinct, numDistinct);
+			dictionary = null;
+		}
+
+		@Override
+		final void read(final ResultSet rs, final int column, final int row) throws SQLException {
+			final String s = rs.getString(column);
+
+			if (s == null) {
+				setNull(row);
+				return;
+			}
+
+			Integer code = dictionary.get(s);
+
+			if (code == null) {
+				if (numDistinct == distinct.length) {
+					distinct = Arrays.copyOf(distinct, numDistinct << 1);
+				}
+
+				code = numDistinct;
+				distinct[numDistinct++] = s;
+				dictionary.put(s, code);
+			}
+
+			codes[row] = code;
+		}
+
+		@Override
+		final Object getObject(final int row) {
+			return distinct[codes[row]];
+		}
+
+		@Override
+		final boolean getBoolean(final int row) {
+			final String s = distinct[codes[row]].trim();
+
+			return s.equalsIgnoreCase("true") || s.equals("1") || s.equalsIgnoreCase("Y");
+		}
+
+		@Override
+		final String getString(final int row) {
+			return distinct[codes[row]];
+		}
+
+	}	// End StringColumn
+
+	private static final class ObjectColumn extends Column {
+
+		private Object[] values;
+
+		ObjectColumn(final int sqlType, final int capacity) {
+			super(sqlType, capacity);
+			values = new Object[capacity];
+		}
+
+		@Override
+		final void grow(final int capacity) {
+			super.grow(capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		final void read(final ResultSet rs, final int column, final int row) throws SQLException {
+			final Object o;
+
+			switch (sqlType) {
+				case Types.DECIMAL:
+				case Types.NUMERIC:			o = rs.getBigDecimal(column); break;
+				case Types.DATE:			o = rs.getDate(column); break;
+				case Types.TIME:			o = rs.getTime(column); break;
+				case Types.TIMESTAMP:		o = rs.getTimestamp(column); break;
+				case Types.BINARY:
+				case Types.VARBINARY:
+				case Types.LONGVARBINARY:
+				case Types.BLOB:			o = rs.getBytes(column); break;
+				default:					o = rs.getObject(column);
+			}
+
+			if (o == null) {
+				setNull(row);
+			} else {
+				values[row] = o;
+			}
+		}
+
+		@Override
+		final Object getObject(final int row) {
+			return values[row];
+		}
+
+		@Override
+		final boolean getBoolean(final int row) {
+			final Object o = values[row];
+
+			return (o instanceof Boolean) ? (Boolean) o : getLong(row) != 0;
+		}
+
+	}	// End ObjectColumn
+
+}	// End ResultSnapshot
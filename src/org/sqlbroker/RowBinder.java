@@ -0,0 +1,203 @@
+package org.sqlbroker;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * Binds the rows of a batch to a {@link PreparedStatement} with one
+ * {@link Setter} per position, chosen from the class of the first
+ * non-<code>null</code> value seen there. After that each cell costs a
+ * single class comparison and a call to the setter of its column, instead
+ * of a walk down the chain of <code>getClass()</code> comparisons of
+ * <code>bind()</code>. A <code>null</code>, or a value of another class
+ * than the one learned, is bound by <code>bind()</code> as before.
+ *
+ * A RowBinder belongs to the one batch and thread using it.
+ *
+ * @author esmith
+ */
+final class RowBinder {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Setter STRING = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setString(i, (String) o);
+		}
+	};
+
+	private static final Setter BIGDECIMAL = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setBigDecimal(i, (BigDecimal) o);
+		}
+	};
+
+	private static final Setter INTEGER = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setInt(i, (Integer) o);
+		}
+	};
+
+	private static final Setter TIMESTAMP = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setTimestamp(i, (Timestamp) o);
+		}
+	};
+
+	private static final Setter BOOLEAN = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setBoolean(i, (Boolean) o);
+		}
+	};
+
+	private static final Setter LONG = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setLong(i, (Long) o);
+		}
+	};
+
+	private static final Setter DOUBLE = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			stmt.setDouble(i, (Double) o);
+		}
+	};
+
+	/** Binds any other class the same way as <code>bind()</code>		*/
+	private static final Setter OTHER = new Setter() {
+		void set(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+			bind(stmt, i, o);
+		}
+	};
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The class learned at each position, or <code>null</code> until one is seen	*/
+	private Class<?>[] classes;
+
+	/** The {@link Setter} of each learned class							*/
+	private Setter[] setters;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	RowBinder() {
+		classes = new Class<?>[0];
+		setters = new Setter[0];
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Binds the value to the parameter at index <code>i</code>, walking the
+	 * classes SQLBroker has a dedicated setter for.
+	 */
+	static final void bind(final PreparedStatement stmt, final int i, final Object o) throws SQLException {
+		if (o == null) {
+			stmt.setNull(i, Types.VARCHAR);
+			return;
+		}
+
+		final Class<?> clazz = o.getClass();
+
+		if (clazz == String.class)
+			stmt.setString(i, (String) o);
+		else if (clazz == BigDecimal.class)
+			stmt.setBigDecimal(i, (BigDecimal) o);
+		else if (clazz == Integer.class)
+			stmt.setInt(i, (Integer) o);
+		else if (clazz == Timestamp.class)
+			stmt.setTimestamp(i, (Timestamp) o);
+		else if (clazz == Character.class)
+			stmt.setString(i, o.toString());
+		else if (clazz == Boolean.class)
+			stmt.setBoolean(i, (Boolean) o);
+		else if (clazz == Date.class)
+			stmt.setDate(i, new java.sql.Date(((Date) o).getTime()));
+		else if (clazz == Long.class)
+			stmt.setLong(i, (Long) o);
+		else if (clazz == Float.class)
+			stmt.setFloat(i, (Float) o);
+		else if (clazz == Short.class)
+			stmt.setShort(i, (Short) o);
+		else if (clazz == Double.class)
+			stmt.setDouble(i, (Double) o);
+		else if (clazz == Time.class)
+			stmt.setTime(i, (Time) o);
+		else
+			stmt.setObject(i, o);
+	}
+
+	/**
+	 * Binds the row to the {@link PreparedStatement} starting after the
+	 * <code>offset</code> parameters already bound.
+	 */
+	final PreparedStatement bind(final PreparedStatement stmt, final Object[] row, final int offset) throws SQLException {
+		Object o;
+
+		if (row.length > classes.length) {
+			grow(row.length);
+		}
+
+		for (int p=0; p < row.length; p++) {
+			o = row[p];
+
+			if (o == null) {
+				stmt.setNull(offset + p + 1, Types.VARCHAR);
+			} else if (o.getClass() == classes[p]) {
+				setters[p].set(stmt, offset + p + 1, o);
+			} else if (classes[p] == null) {
+				classes[p] = o.getClass();
+				setters[p] = of(classes[p]);
+				setters[p].set(stmt, offset + p + 1, o);
+			} else {
+				bind(stmt, offset + p + 1, o);
+			}
+		}
+
+		return stmt;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private static Setter of(final Class<?> clazz) {
+		if (clazz == String.class)
+			return STRING;
+		if (clazz == BigDecimal.class)
+			return BIGDECIMAL;
+		if (clazz == Integer.class)
+			return INTEGER;
+		if (clazz == Timestamp.class)
+			return TIMESTAMP;
+		if (clazz == Boolean.class)
+			return BOOLEAN;
+		if (clazz == Long.class)
+			return LONG;
+		if (clazz == Double.class)
+			return DOUBLE;
+
+		return OTHER;
+	}
+
+	private void grow(final int width) {
+		final Class<?>[] c = new Class<?>[width];
+		final Setter[] s = new Setter[width];
+
+		System.arraycopy(classes, 0, c, 0, classes.length);
+		System.arraycopy(setters, 0, s, 0, setters.length);
+		classes = c;
+		setters = s;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private abstract static class Setter {
+
+		abstract void set(PreparedStatement stmt, int i, Object o) throws SQLException;
+
+	}	// End Setter
+
+}	// End RowBinder
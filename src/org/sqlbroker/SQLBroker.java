@@ -4,33 +4,41 @@
 
 package org.sqlbroker;
 
-import java.math.BigDecimal;
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Time;
-import java.sql.Timestamp;
-import java.sql.Types;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
 
 import javax.sql.DataSource;
 
-import org.sqlbroker.Parameters.Value;
+import org.sqlbroker.balancer.Balancer;
 import org.sqlbroker.helper.Insert;
 import org.sqlbroker.helper.SQL;
 import org.sqlbroker.helper.Select;
+import org.sqlbroker.helper.Upsert;
 import org.sqlbroker.mapper.Mapper;
 
 import root.adt.ListArray;
 import root.jdbc.DatabaseException;
 import root.jdbc.PooledConnection;
 import root.jdbc.PooledDataSource;
+import root.jdbc.Transaction;
 import root.lang.StringExtractor;
 import root.log.Log;
 import root.util.Jdbc;
+import root.util.Root;
 
 /**
  * SQLBroker is a sophisticated and easy to use JDBC library based on the
@@ -65,106 +73,1243 @@ public final class SQLBroker {
 
 	private static final Log log = new Log(SQLBroker.class);
 
+	/** The number of SQL queries whose {@link ResultShape} is cached		*/
+	private static final int SHAPE_CACHE_SIZE = 256;
+
+	/** The bounds and target duration of an adaptively sized batch chunk	*/
+	private static final int MIN_CHUNK = 128, MAX_CHUNK = 32768;
+	private static final long CHUNK_NANOS = 200000000L;
+
+	/** Set while a read whose result is cached runs, so it is not routed to a lagging replica	*/
+	private static final ThreadLocal<Boolean> cachingRead = new ThreadLocal<>();
+
+	/** Finds the locking clauses that keep a query on the primary database	*/
+	private static final Pattern LOCKING = Pattern.compile("\\bFOR\\s+(UPDATE|SHARE|NO\\s+KEY)\\b|\\bLOCK\\s+IN\\s+SHARE\\b", Pattern.CASE_INSENSITIVE);
+
 	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
 
-	private final PooledDataSource dataSource;
+	private final PooledDataSource dataSource;
+
+	/** Canonical SQL statements, or <code>null</code> if statement caching is disabled	*/
+	private final StatementCache stmtCache;
+
+	/** Runs the asynchronous calls, or <code>null</code> to use the shared default		*/
+	private final Executor executor;
+
+	/** The column shape of each SQL query								*/
+	private final ShapeCache shapes;
+
+	/** Coalesces identical concurrent loads, or <code>null</code> if disabled	*/
+	private volatile SingleFlight flights;
+
+	/** Caches the results of reads, or <code>null</code> if disabled	*/
+	private volatile ResultCache results;
+
+	/** Caches the reads that found no row, or <code>null</code> if disabled	*/
+	private volatile NegativeCache negatives;
+
+	/** The parameter limit of a rewritten multi-row insert, or zero to not rewrite	*/
+	private volatile int maxInsertParams;
+
+	/** Chooses the replica of each routed read, or <code>null</code> for none	*/
+	private volatile Balancer replicas;
+
+	/** The SQL dialect of the database, or <code>null</code> until detected	*/
+	private volatile Dialect dialect;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	/**
+	 * Creates a SQLBroker on top of the {@link PooledDataSource}. If the data
+	 * source has a statement cache size greater than zero, every
+	 * {@link PreparedStatement} is borrowed from the per-connection statement
+	 * cache instead of being prepared and closed on each call.
+	 *
+	 * @param dataSource the {@link PooledDataSource} to use
+	 */
+	public SQLBroker(final PooledDataSource dataSource) {
+		this(dataSource, null);
+	}
+
+	/**
+	 * Creates a SQLBroker on top of the {@link PooledDataSource} which runs
+	 * its asynchronous calls on the specified {@link Executor}. When the
+	 * {@link Executor} is <code>null</code>, a shared executor is used that
+	 * runs each call on a virtual thread if the JVM supports them.
+	 *
+	 * @param dataSource the {@link PooledDataSource} to use
+	 * @param executor the {@link Executor} for asynchronous calls
+	 */
+	public SQLBroker(final PooledDataSource dataSource, final Executor executor) {
+		this.dataSource = dataSource;
+		this.stmtCache = (dataSource.getStmtCacheSize() > 0) ? new StatementCache(dataSource.getStmtCacheSize()) : null;
+		this.executor = executor;
+		this.shapes = new ShapeCache(SHAPE_CACHE_SIZE);
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	public final PooledDataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Returns the {@link StatementCache} statistics, or <code>null</code> if
+	 * the {@link PooledDataSource} has statement caching disabled.
+	 *
+	 * @return the {@link StatementCache}, or <code>null</code>
+	 */
+	public final StatementCache getStatementCache() {
+		return stmtCache;
+	}
+
+	/**
+	 * Returns the {@link Dialect} of the database, which is detected from
+	 * its product name on the first call unless it was set.
+	 */
+	public final Dialect getDialect() {
+		Dialect d = dialect;
+
+		if (d == null) {
+			final PooledConnection con = dataSource.getConnection();
+
+			try {
+				d = Dialect.of(con.getMetaData().getDatabaseProductName());
+				dialect = d;
+			} catch (SQLException e) {
+				throw new DatabaseException("Could not read the database product name", e);
+			} finally {
+				con.close();
+			}
+		}
+
+		return d;
+	}
+
+	/**
+	 * Returns the {@link NegativeCache}, or <code>null</code> if negative
+	 * caching is disabled.
+	 *
+	 * @return the {@link NegativeCache}, or <code>null</code>
+	 */
+	public final NegativeCache getNegativeCache() {
+		return negatives;
+	}
+
+	/**
+	 * Returns the {@link Balancer} of the replicas, or <code>null</code> if
+	 * every call runs on the primary database.
+	 *
+	 * @return the {@link Balancer}, or <code>null</code>
+	 */
+	public final Balancer getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Returns the {@link ResultCache}, or <code>null</code> if result
+	 * caching is disabled.
+	 *
+	 * @return the {@link ResultCache}, or <code>null</code>
+	 */
+	public final ResultCache getResultCache() {
+		return results;
+	}
+
+	/**
+	 * Returns the {@link SingleFlight} statistics, or <code>null</code> if
+	 * coalescing is disabled.
+	 *
+	 * @return the {@link SingleFlight}, or <code>null</code>
+	 */
+	public final SingleFlight getSingleFlight() {
+		return flights;
+	}
+
+	/**
+	 * Sets the {@link Dialect} of the database instead of detecting it,
+	 * such as {@link Dialect#GENERIC} to keep to standard SQL.
+	 *
+	 * @param d the {@link Dialect}, or <code>null</code> to detect it
+	 */
+	public final void setDialect(final Dialect d) {
+		dialect = d;
+	}
+
+	/**
+	 * Replaces the {@link NegativeCache} with an empty one remembering up to
+	 * <code>capacity</code> <code>exists()</code> calls that returned
+	 * <code>false</code> and <code>load()</code> calls that returned
+	 * <code>null</code> for <code>ttlMillis</code> milliseconds each, or
+	 * disables negative caching when the capacity is zero. Reads made inside
+	 * a {@link Transaction} are never answered from the cache.
+	 *
+	 * @param capacity the maximum number of cached misses
+	 * @param ttlMillis the time to live of each cached miss
+	 * @param bloom <code>true</code> to put a Bloom filter in front of the cache
+	 * @return the new {@link NegativeCache}, or <code>null</code>
+	 */
+	public final NegativeCache setNegativeCache(final int capacity, final long ttlMillis, final boolean bloom) {
+		negatives = (capacity > 0) ? new NegativeCache(capacity, ttlMillis, bloom) : null;
+		return negatives;
+	}
+
+	/**
+	 * Makes <code>batch(sql, params)</code> rewrite a single row
+	 * <code>INSERT ... VALUES (?, ...)</code> into statements inserting as
+	 * many rows as fit in <code>maxParams</code> parameters with
+	 * <code>VALUES (?, ...), (?, ...)</code>, or turns the rewriting off when
+	 * it is zero. Most drivers send every row of a batch as a statement of
+	 * its own, so this cuts a bulk load to a few statements. The
+	 * {@link BatchResult} has the update count of each row when every row
+	 * of a statement counted the same, and
+	 * {@link Statement#SUCCESS_NO_INFO} otherwise. Set the limit below the
+	 * number of parameters the driver allows in one statement. Only a plain
+	 * <code>INSERT</code>, or one ending in
+	 * <code>ON DUPLICATE KEY UPDATE</code>, is rewritten; a statement with
+	 * <code>ON CONFLICT</code>, <code>RETURNING</code>, or any other
+	 * trailing clause runs one row at a time as before.
+	 *
+	 * @param maxParams the maximum number of parameters of a statement
+	 */
+	public final void setMultiRowInserts(final int maxParams) {
+		maxInsertParams = Math.max(maxParams, 0);
+	}
+
+	/**
+	 * Routes reads to the replicas handed out by the {@link Balancer}, or
+	 * every call to the primary database when it is <code>null</code>.
+	 * Outside of a transaction, the <code>count()</code>,
+	 * <code>exists()</code>, <code>load()</code>, <code>loadAll()</code>, and
+	 * <code>snapshot()</code> calls whose SQL is a <code>SELECT</code> or
+	 * <code>WITH</code> query without a locking clause run on a replica,
+	 * except for the reads whose result goes into the {@link ResultCache} or
+	 * {@link NegativeCache}, which could otherwise keep a lagging replica's
+	 * stale answer until it expires.
+	 * A {@link ReadOnly} transaction runs on a single replica from start to
+	 * end, and any other transaction, open {@link QueryResult} or
+	 * {@link QueryStream}, and write runs on the primary. Connections to a
+	 * replica are marked read-only, so the replicas must not be used for
+	 * anything else.
+	 *
+	 * @param balancer the {@link Balancer} of the replicas, or <code>null</code>
+	 */
+	public final void setReplicas(final Balancer balancer) {
+		replicas = balancer;
+	}
+
+	/**
+	 * Replaces the {@link ResultCache} with an empty one holding at most an
+	 * estimated <code>capacity</code> bytes of results, or disables result
+	 * caching when the capacity is zero. Results are only cached for the
+	 * SQL queries given a policy with {@link ResultCache#setPolicy}, and
+	 * never for reads made inside a {@link Transaction}.
+	 *
+	 * @param capacity the maximum estimated weight of the results in bytes
+	 * @return the new {@link ResultCache}, or <code>null</code>
+	 */
+	public final ResultCache setResultCache(final long capacity) {
+		results = (capacity > 0) ? new ResultCache(capacity) : null;
+		return results;
+	}
+
+	/**
+	 * Turns coalescing of identical concurrent reads on or off. While it is
+	 * on, a <code>load()</code>, <code>loadAll()</code>, <code>count()</code>,
+	 * or <code>exists()</code> called with the same SQL, equal
+	 * {@link Parameters}, and an equal {@link Mapper} as one already running
+	 * on another thread waits for that one to finish and returns the very
+	 * same object instead of querying the database again. The result must
+	 * therefore be treated as read-only. Reads made inside a
+	 * {@link Transaction} are never coalesced since they must see their own
+	 * writes. Coalescing is off by default.
+	 *
+	 * @param coalescing <code>true</code> to coalesce identical concurrent loads
+	 */
+	public final void setCoalescing(final boolean coalescing) {
+		if (!coalescing) {
+			flights = null;
+		} else if (flights == null) {
+			flights = new SingleFlight();
+		}
+	}
+
+	public final int execute(final String sql) {
+		log.debug("Executing SQL statement [{P}]", sql);
+
+		final PooledConnection con = getConnection();
+		Statement stmt = null;
+
+		try {
+			stmt = con.createStatement();
+
+			final int count = stmt.executeUpdate(sql);
+			TableChanges.publish(TableChanges.tableOf(sql));
+			return count;
+		} catch (SQLException e) {
+			throw new DatabaseException(sql, e);
+		} finally {
+			Jdbc.close(stmt);
+			con.close();
+		}
+	}
+
+	public final BatchResult batch(final String... stmts) {
+		log.debug("Batch executing SQL statements");
+
+		final PooledConnection con = getConnection();
+		Statement stmt = null;
+
+		try {
+			stmt = con.createStatement();
+
+			final BatchResult result = new BatchResult(stmt, stmts);
+			for (String s : stmts) {
+				TableChanges.publish(TableChanges.tableOf(s));
+			}
+			return result;
+		} catch (BatchUpdateException e) {
+			throw new DatabaseException(new BatchResult(e.getUpdateCounts(), stmts).toString(), e);
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		} finally {
+			Jdbc.close(stmt);
+			con.close();
+		}
+	}
+
+	public final BatchResult batch(final String sql, final BatchParams params) {
+		final int maxParams = maxInsertParams;
+
+		if (maxParams > 0 && params.size > 1) {
+			final ValuesRewriter values = ValuesRewriter.parse(sql);
+
+			if (values != null && isRectangular(params, values.getWidth())) {
+				return batchRows(sql, params, values, maxParams);
+			}
+		}
+
+		log.debug("Batch executing SQL statement [{P}] with {P} sets of parameters", sql, params.size);
+
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+
+		try {
+			final RowBinder binder = new RowBinder();
+
+			stmt = prepareStatement(con, sql);
+			for (int i=0; i < params.size; i++) {
+				binder.bind(stmt, params.values[i], 0).addBatch();
+			}
+			AsyncCall.attach(stmt);
+
+			final BatchResult result = new BatchResult(sql, params, stmt);
+			TableChanges.publish(TableChanges.tableOf(sql));
+			return result;
+		} catch (BatchUpdateException e) {
+			throw new DatabaseException(new BatchResult(sql, params, e.getUpdateCounts()).toString(), e);
+		} catch (SQLException e) {
+			throw new DatabaseException(sql, e);
+		} finally {
+			AsyncCall.detach();
+			Jdbc.close(stmt);
+			con.close();
+		}
+	}
+
+	/**
+	 * Executes the statement once for each row of the {@link ColumnParams},
+	 * binding each cell with the setter of its column's type straight from
+	 * the primitive column arrays. The rows are not rewritten into multi-row
+	 * inserts.
+	 *
+	 * @param sql the SQL statement to execute
+	 * @param params the parameters of each execution
+	 * @return the update count of each row
+	 */
+	public final BatchResult batch(final String sql, final ColumnParams params) {
+		log.debug("Batch executing SQL statement [{P}] with {P} rows of column parameters", sql, params.size);
+
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+
+		try {
+			stmt = prepareStatement(con, sql);
+			for (int i=0; i < params.size; i++) {
+				params.bind(stmt, i);
+				stmt.addBatch();
+			}
+			AsyncCall.attach(stmt);
+
+			final BatchResult result = new BatchResult(sql, params.size, stmt.executeBatch());
+			stmt.clearBatch();
+			TableChanges.publish(TableChanges.tableOf(sql));
+			return result;
+		} catch (BatchUpdateException e) {
+			throw new DatabaseException(new BatchResult(sql, params.size, e.getUpdateCounts()).toString(), e);
+		} catch (SQLException e) {
+			throw new DatabaseException(sql, e);
+		} finally {
+			AsyncCall.detach();
+			Jdbc.close(stmt);
+			con.close();
+		}
+	}
+
+	/**
+	 * Batch executes the SQL statement once for every row produced by the
+	 * {@link Iterator}, sending the rows to the database in chunks of
+	 * <code>chunkSize</code> as they are produced, so neither the rows nor
+	 * the driver buffer ever hold more than a chunk. When the chunk size is
+	 * zero, it starts small and adapts so each chunk takes about 200 ms.
+	 * The {@link BatchResult} only keeps the totals of the update counts.
+	 *
+	 * With <code>commitChunks</code> set, each chunk is committed once sent,
+	 * so a failure only rolls back the chunk it happened in. This cannot be
+	 * done inside a {@link Transaction}, whose chunks are all committed or
+	 * rolled back together.
+	 *
+	 * @param sql the SQL statement to execute
+	 * @param rows the parameters of each execution
+	 * @param chunkSize the number of rows per chunk, or zero to adapt it
+	 * @param commitChunks <code>true</code> to commit every chunk
+	 * @return the totals of the update counts
+	 */
+	public final BatchResult batch(final String sql, final Iterator<Object[]> rows, final int chunkSize, final boolean commitChunks) {
+		log.debug("Batch executing SQL statement [{P}] in chunks of {P} rows", sql, (chunkSize > 0) ? chunkSize : "adaptive");
+
+		if (commitChunks && Transaction.isActive()) {
+			throw new IllegalStateException("Cannot commit the chunks of a batch inside a transaction");
+		}
+
+		final BatchResult result = new BatchResult(sql);
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+		boolean autoCommit = false, complete = false;
+		int size = (chunkSize > 0) ? chunkSize : MIN_CHUNK;
+		long start;
+
+		try {
+			if (commitChunks && (autoCommit = con.getAutoCommit())) {
+				con.setAutoCommit(false);
+			}
+
+			final RowBinder binder = new RowBinder();
+
+			stmt = prepareStatement(con, sql);
+			AsyncCall.attach(stmt);
+
+			for (int n=0; rows.hasNext();) {
+				binder.bind(stmt, rows.next(), 0).addBatch();
+
+				if (++n == size || !rows.hasNext()) {
+					start = System.nanoTime();
+					result.add(stmt.executeBatch());
+					if (commitChunks) {
+						con.commit();
+					}
+
+					if (chunkSize <= 0) {
+						size = adapt(size, System.nanoTime() - start);
+					}
+					n = 0;
+				}
+			}
+
+			complete = true;
+			return result;
+		} catch (SQLException e) {
+			throw new DatabaseException(result.toString(), e);
+		} finally {
+			// Whatever failed, the rows bound since the last chunk must not
+			// be left on a cached statement or committed with auto-commit
+			if (!complete) {
+				if (stmt != null) {
+					try {
+						stmt.clearBatch();
+					} catch (SQLException e) {
+						log.warn("Could not clear the batch of a failed chunked batch", e);
+					}
+				}
+
+				if (commitChunks) {
+					try {
+						con.rollback();
+					} catch (SQLException e) {
+						log.warn("Could not roll back the chunk of a failed chunked batch", e);
+					}
+				}
+			}
+
+			if (result.getChunks() > 0) {
+				TableChanges.publish(TableChanges.tableOf(sql));
+			}
+
+			if (autoCommit) {
+				try {
+					con.setAutoCommit(true);
+				} catch (SQLException e) {
+					log.warn("Could not restore auto-commit after a chunked batch", e);
+				}
+			}
+
+			AsyncCall.detach();
+			Jdbc.close(stmt);
+			con.close();
+		}
+	}
+
+	/**
+	 * Splits the batch in order into as many parts as there are
+	 * <code>connections</code> and runs them at the same time, each on its
+	 * own pooled connection. See
+	 * {@link #batchParallel(String, BatchParams, int, int)}.
+	 *
+	 * @param sql the SQL statement to execute
+	 * @param params the parameters of each execution
+	 * @param connections the number of connections to run the batch on
+	 * @return the update count of each row, in the original order
+	 */
+	public final BatchResult batchParallel(final String sql, final BatchParams params, final int connections) {
+		return batchParallel(sql, params, connections, -1);
+	}
+
+	/**
+	 * Splits the batch into as many parts as there are
+	 * <code>connections</code> and runs them at the same time, each on its
+	 * own pooled connection and in the same way as
+	 * <code>batch(sql, params)</code>. The update counts of the parts are
+	 * merged back into one {@link BatchResult} in the original row order.
+	 *
+	 * When <code>keyColumn</code> is the index of a parameter, the rows are
+	 * ordered by its {@link Comparable} values and split into key ranges,
+	 * never splitting rows with the same key, so that the parts do not lock
+	 * the same rows or index pages and wait on one another. Otherwise the
+	 * rows are split in their original order.
+	 *
+	 * Each part commits on its own, so when one fails the others may still
+	 * have been applied; the rows of the failed parts are reported as
+	 * {@link Statement#EXECUTE_FAILED}. A parallel batch cannot run inside
+	 * a {@link Transaction}.
+	 *
+	 * @param sql the SQL statement to execute
+	 * @param params the parameters of each execution
+	 * @param connections the number of connections to run the batch on
+	 * @param keyColumn the index of the parameter to partition by, or -1
+	 * @return the update count of each row, in the original order
+	 */
+	public final BatchResult batchParallel(final String sql, final BatchParams params, final int connections, final int keyColumn) {
+		if (Transaction.isActive()) {
+			throw new IllegalStateException("A parallel batch cannot run inside a transaction");
+		}
+
+		final int parts = Math.min(connections, params.size);
+
+		if (parts <= 1) {
+			return batch(sql, params);
+		}
+
+		log.debug("Batch executing SQL statement [{P}] with {P} sets of parameters on {P} connections", sql, params.size, parts);
+
+		final int[] order = order(params, keyColumn);
+		final int[] bounds = partition(params, order, parts, keyColumn);
+		final int[] counts = new int[params.size];
+		final Part[] tasks = new Part[parts];
+		final Executor ex = (executor == null) ? AsyncCall.getDefaultExecutor() : executor;
+		DatabaseException error = null;
+
+		for (int p=0; p < parts; p++) {
+			if (bounds[p] == bounds[p + 1]) {
+				continue;
+			}
+
+			final BatchParams part = new BatchParams(bounds[p + 1] - bounds[p]);
+
+			for (int i=bounds[p]; i < bounds[p + 1]; i++) {
+				part.add(params.values[order[i]]);
+			}
+
+			tasks[p] = new Part(new Callable<BatchResult>() {
+				public BatchResult call() {
+					return batch(sql, part);
+				}
+			});
+
+			if (p > 0) {
+				try {
+					ex.execute(tasks[p]);
+				} catch (RuntimeException e) {
+					// Neither this part nor the first, left for this thread, ever runs
+					tasks[p] = null;
+					tasks[0] = null;
+					abort(tasks);
+					throw e;
+				}
+			}
+		}
+
+		// The calling thread runs the first part itself
+		tasks[0].run();
+
+		for (int p=0; p < parts; p++) {
+			if (tasks[p] == null) {
+				continue;
+			}
+
+			try {
+				final int[] results = tasks[p].get().results;
+
+				for (int i=bounds[p]; i < bounds[p + 1]; i++) {
+					counts[order[i]] = (i - bounds[p] < results.length) ? results[i - bounds[p]] : Statement.EXECUTE_FAILED;
+				}
+			} catch (InterruptedException | ExecutionException e) {
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+
+				for (int i=bounds[p]; i < bounds[p + 1]; i++) {
+					counts[order[i]] = Statement.EXECUTE_FAILED;
+				}
+
+				final Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+				if (error == null) {
+					error = new DatabaseException("Part " + (p + 1) + " of " + parts + " of the parallel batch failed", cause);
+				} else {
+					error.addSuppressed(cause);
+				}
+			}
+		}
+
+		final BatchResult result = new BatchResult(sql, params, counts);
+
+		if (error != null) {
+			throw new DatabaseException(result.toString(), error);
+		}
+
+		return result;
+	}
+
+	public final Future<BatchResult> batchAsync(final String sql, final BatchParams params) {
+		return batchAsync(sql, params, 0);
+	}
+
+	public final Future<BatchResult> batchAsync(final String sql, final BatchParams params, final long timeoutMillis) {
+		return new AsyncCall<>(new Callable<BatchResult>() {
+			public BatchResult call() {
+				return batch(sql, params);
+			}
+		}).pin(params).submit((executor == null) ? AsyncCall.getDefaultExecutor() : executor, timeoutMillis);
+	}
+
+	/**
+	 * Updates every row with <code>updateSql</code> and inserts the rows
+	 * whose update count was zero with <code>insertSql</code>, both taking
+	 * the same parameters. The two passes run in one {@link Transaction},
+	 * which is begun unless one is already in progress, so another writer
+	 * never sees only the updated rows. Prefer
+	 * {@link #upsert(Upsert, BatchParams)}, which does it in a single pass
+	 * on databases that support it.
+	 *
+	 * @param updateSql the SQL statement updating a row
+	 * @param insertSql the SQL statement inserting a row
+	 * @param params the parameters of each row
+	 * @return the number of rows inserted
+	 */
+	public final int batch(final String updateSql, final String insertSql, final BatchParams params) {
+		return batch(updateSql, params, insertSql, params, null);
+	}
+
+	public final int count(final String sql, final Parameters params) {
+		if (isDirect()) {
+			return countRows(sql, params);
+		}
+
+		return read(QueryKey.COUNT, sql, params, null, new Callable<Integer>() {
+			public Integer call() {
+				return countRows(sql, params);
+			}
+		});
+	}
+
+	/**
+	 * Watch out and don't use a <code>SELECT COUNT()</code> query, use
+	 * something like <code>SELECT 1</code> instead.
+	 *
+	 * @param stmt
+	 * @return
+	 */
+	public final boolean exists(final Select stmt) {
+		return exists(stmt.toString(), stmt.getParams());
+	}
+
+	/**
+	 * Watch out and don't use a <code>SELECT COUNT()</code> query, use
+	 * something like <code>SELECT 1</code> instead.
+	 *
+	 * @param sql
+	 * @param params
+	 * @return
+	 */
+	public final boolean exists(final String sql, final Parameters params) {
+		if (isDirect()) {
+			return existsRow(sql, params);
+		}
+
+		return read(QueryKey.EXISTS, sql, params, null, new Callable<Boolean>() {
+			public Boolean call() {
+				return existsRow(sql, params);
+			}
+		});
+	}
+
+	public final int insert(final Insert stmt) {
+		return insert(stmt.toString(), stmt.getParams(), stmt.getTable());
+	}
+
+	public final int insert(final String sql, final Parameters params) {
+		return insert(sql, params, null);
+	}
+
+	public final <T> T load(final String sql, final Parameters params, final Mapper<T> mapper) {
+		if (isDirect()) {
+			return loadOne(sql, params, mapper);
+		}
+
+		return read(QueryKey.LOAD, sql, params, mapper, new Callable<T>() {
+			public T call() {
+				return loadOne(sql, params, mapper);
+			}
+		});
+	}
+
+	public final <T> Future<T> loadAsync(final String sql, final Parameters params, final Mapper<T> mapper) {
+		return loadAsync(sql, params, mapper, 0);
+	}
+
+	public final <T> Future<T> loadAsync(final String sql, final Parameters params, final Mapper<T> mapper, final long timeoutMillis) {
+		return submit(new Callable<T>() {
+			public T call() {
+				return load(sql, params, mapper);
+			}
+		}, params, timeoutMillis);
+	}
+
+	public final <T> ListArray<T> loadAll(final String sql, final Parameters params, final Mapper<T> mapper) {
+		if (isDirect()) {
+			return loadList(sql, params, mapper);
+		}
+
+		return read(QueryKey.LOAD_ALL, sql, params, mapper, new Callable<ListArray<T>>() {
+			public ListArray<T> call() {
+				return loadList(sql, params, mapper);
+			}
+		});
+	}
+
+	public final QueryResult query(final Select stmt) {
+		final Parameters params = stmt.getParams();
+
+		return (params.getSize() == 0) ? query(stmt.toString()) : query(stmt.toString(), params);
+	}
+
+	public final QueryResult query(final String sql) {
+		log.debug("Executing SQL query [{P}]", sql);
+
+		final PooledConnection con = getConnection();
+		Statement stmt = null;
+		ResultSet rs = null;
+
+		try {
+			stmt = con.createStatement();
+			rs = stmt.executeQuery(sql);
+			return new QueryResult(shapes, sql, con, stmt, rs);
+		} catch (SQLException e) {
+			Jdbc.close(stmt, rs);
+			con.close();
+			throw new DatabaseException(sql, e);
+		}
+	}
+
+	public final QueryResult query(final String sql, final Parameters params) {
+		log.debug("Executing SQL query [{P}] with {P}", sql, params);
+
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+
+		try {
+			// Not cached since the ResultSet outlives the call, and inside a
+			// Transaction another call of the same SQL would re-execute it
+			stmt = prepare(con.prepareStatement(sql), params);
+			AsyncCall.attach(stmt);
+			rs = stmt.executeQuery();
+			return new QueryResult(shapes, sql, con, stmt, rs, params);
+		} catch (SQLException e) {
+			Jdbc.close(stmt, rs);
+			con.close();
+			throw new DatabaseException(getErrorMessage(sql, params), e);
+		} finally {
+			AsyncCall.detach();
+		}
+	}
+
+	public final Future<QueryResult> queryAsync(final String sql, final Parameters params) {
+		return queryAsync(sql, params, 0);
+	}
+
+	/**
+	 * Runs <code>query(sql, params)</code> on the asynchronous
+	 * {@link Executor}. Cancelling the {@link Future} with
+	 * <code>cancel(true)</code> calls <code>Statement.cancel()</code> on the
+	 * executing statement. If <code>timeoutMillis</code> is greater than zero
+	 * and elapses first, the statement is cancelled as well and
+	 * <code>Future.get()</code> throws an {@link java.util.concurrent.ExecutionException}
+	 * caused by a {@link java.util.concurrent.TimeoutException}.
+	 *
+	 * The call runs on another thread and therefore outside of any
+	 * {@link Transaction} active on the calling thread. The
+	 * returned {@link QueryResult} must be closed by the caller just like
+	 * its synchronous counterpart.
+	 *
+	 * @param sql the SQL query
+	 * @param params the query {@link Parameters}
+	 * @param timeoutMillis the call timeout, or zero for none
+	 * @return the {@link Future} {@link QueryResult}
+	 */
+	public final Future<QueryResult> queryAsync(final String sql, final Parameters params, final long timeoutMillis) {
+		return submit(new Callable<QueryResult>() {
+			public QueryResult call() {
+				return query(sql, params);
+			}
+		}, params, timeoutMillis);
+	}
+
+	public final QueryResult query(final Select stmt, final int maxRows, final int seconds) {
+		return query(stmt.toString(), stmt.getParams(), maxRows, seconds);
+	}
+
+	public final QueryResult query(final String sql, final Parameters params, final int maxRows, final int seconds) {
+		log.debug("Executing SQL query [{P}] with {P}, maxRows={P}, seconds={P}", sql, params, maxRows, seconds);
+
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+
+		try {
+			// Not cached since maxRows and the query timeout would stick to the statement
+			stmt = prepare(con.prepareStatement(sql), params);
+			if (maxRows > 0) stmt.setMaxRows(maxRows);
+			if (seconds > 0) stmt.setQueryTimeout(seconds);
+			rs = stmt.executeQuery();
+			return new QueryResult(shapes, sql, con, stmt, rs, params);
+		} catch (SQLException e) {
+			Jdbc.close(stmt, rs);
+			con.close();
+			throw new DatabaseException(getErrorMessage(sql, params), e);
+		}
+	}
+
+	public final ResultSnapshot snapshot(final Select stmt) {
+		return snapshot(stmt.toString(), stmt.getParams());
+	}
+
+	/**
+	 * Executes the SQL query and drains its entire result into a
+	 * disconnected, column-oriented {@link ResultSnapshot}. The connection
+	 * is released before this method returns, so the snapshot can be
+	 * consumed at any pace without holding on to a pooled connection.
+	 *
+	 * @param sql the SQL query
+	 * @param params the query {@link Parameters}
+	 * @return a {@link ResultSnapshot} of every row
+	 */
+	public final ResultSnapshot snapshot(final String sql, final Parameters params) {
+		log.debug("Executing SQL query [{P}] with {P} into a snapshot", sql, params);
+
+		final PooledDataSource ds = route(sql);
+		final PooledConnection con = getConnection(ds);
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+
+		try {
+			stmt = prepare(prepareStatement(con, sql), params);
+			AsyncCall.attach(stmt);
+			rs = stmt.executeQuery();
+			return ResultSnapshot.drain(shapes.get(sql, rs), rs);
+		} catch (SQLException e) {
+			throw new DatabaseException(getErrorMessage(sql, params), e);
+		} finally {
+			AsyncCall.detach();
+			Jdbc.close(stmt, rs);
+			con.close();
+			release(ds);
+		}
+	}
+
+	public final <T> QueryStream<T> stream(final Select stmt, final Mapper<T> mapper) {
+		return stream(stmt.toString(), stmt.getParams(), mapper, 0);
+	}
+
+	public final <T> QueryStream<T> stream(final String sql, final Parameters params, final Mapper<T> mapper) {
+		return stream(sql, params, mapper, 0);
+	}
+
+	/**
+	 * Returns a {@link QueryStream} that maps each row as it is pulled from
+	 * the database instead of materializing the whole result like
+	 * <code>loadAll()</code> does. The statement is opened as a forward-only,
+	 * read-only cursor and the <code>fetchSize</code> is passed on to the
+	 * driver as a hint for how many rows to buffer per round trip. A value
+	 * of zero leaves the driver default in place.
+	 *
+	 * Note that some drivers need more than a fetch size to avoid buffering
+	 * the entire result, e.g. PostgreSQL only honors it inside a transaction
+	 * and MySQL requires <code>Integer.MIN_VALUE</code>.
+	 *
+	 * @param sql the SQL query
+	 * @param params the query {@link Parameters}
+	 * @param mapper the {@link Mapper} to apply to each row
+	 * @param fetchSize the number of rows the driver should fetch at a time
+	 * @return a {@link QueryStream} that must be fully read or closed
+	 */
+	public final <T> QueryStream<T> stream(final String sql, final Parameters params, final Mapper<T> mapper, final int fetchSize) {
+		return stream(sql, params, mapper, fetchSize, 0);
+	}
+
+	public final UpdateResult update(final SQL stmt) {
+		return update(stmt.toString(), stmt.getParams(), stmt.getTable());
+	}
+
+	public final UpdateResult update(final String sql, final Parameters params) {
+		return update(sql, params, null);
+	}
+
+	public final Future<UpdateResult> updateAsync(final String sql, final Parameters params) {
+		return updateAsync(sql, params, 0);
+	}
+
+	public final Future<UpdateResult> updateAsync(final String sql, final Parameters params, final long timeoutMillis) {
+		return submit(new Callable<UpdateResult>() {
+			public UpdateResult call() {
+				return update(sql, params);
+			}
+		}, params, timeoutMillis);
+	}
+
+	/**
+	 * Inserts each row of the {@link Upsert}, or updates its value columns
+	 * if a row with the same keys already exists. Each row holds the keys
+	 * followed by the values. On databases whose {@link Dialect} has a
+	 * single statement upsert, the batch runs once with
+	 * <code>MERGE</code>, <code>INSERT ... ON CONFLICT</code>, or
+	 * <code>INSERT ... ON DUPLICATE KEY UPDATE</code>. Only the latter is
+	 * rewritten into multi-row inserts if enabled with
+	 * {@link #setMultiRowInserts(int)}, where rows repeating a key are
+	 * applied in order as if sent one by one; PostgreSQL would reject an
+	 * <code>ON CONFLICT</code> statement holding the same key twice.
+	 * Elsewhere every row is updated and
+	 * the rows that were not found are then inserted, both in one
+	 * {@link Transaction}, which only works with drivers reporting the
+	 * update count of each row of a batch.
+	 *
+	 * The update counts are the ones the database reports, which for
+	 * MySQL is 1 for an inserted row and 2 for an updated one.
+	 *
+	 * @param upsert the table, key columns, and value columns to upsert
+	 * @param params the keys and values of each row
+	 * @return the update count of each row
+	 */
+	public final BatchResult upsert(final Upsert upsert, final BatchParams params) {
+		final String sql = upsert.toSql(getDialect());
+
+		if (sql != null) {
+			return batch(sql, params);
+		}
+
+		final int keys = upsert.getKeyCount();
+		final BatchParams updates = new BatchParams(params.size);
+		final int[] counts = new int[params.size];
+		Object[] row, u;
+
+		// The UPDATE takes the values before the keys
+		for (int i=0; i < params.size; i++) {
+			row = params.values[i];
+			u = new Object[row.length];
+			System.arraycopy(row, keys, u, 0, row.length - keys);
+			System.arraycopy(row, 0, u, row.length - keys, keys);
+			updates.add(u);
+		}
+
+		batch(upsert.toUpdate(), updates, upsert.toInsert(), params, counts);
+
+		return new BatchResult(upsert.toInsert(), params, counts);
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	final <T> QueryStream<T> stream(final String sql, final Parameters params, final Mapper<T> mapper, final int fetchSize, final int maxRows) {
+		log.debug("Streaming {P} using SQL query [{P}] and {P}, fetchSize={P}, maxRows={P}", mapper, sql, params, fetchSize, maxRows);
+
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+
+		try {
+			// Not cached since the fetch size and maxRows would stick to the statement
+			stmt = prepare(con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY), params);
+			stmt.setFetchDirection(ResultSet.FETCH_FORWARD);
+			if (fetchSize != 0) stmt.setFetchSize(fetchSize);
+			if (maxRows > 0) stmt.setMaxRows(maxRows);
+			AsyncCall.attach(stmt);
+			rs = stmt.executeQuery();
+			return new QueryStream<>(shapes.get(sql, rs), sql, params, mapper, con, stmt, rs);
+		} catch (SQLException e) {
+			Jdbc.close(stmt, rs);
+			con.close();
+			throw new DatabaseException(getErrorMessage(sql, params), e);
+		} finally {
+			AsyncCall.detach();
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Cancels the parts of a parallel batch that have not started yet and
+	 * waits for the ones already running to finish, so none is left writing
+	 * once the batch has failed.
+	 */
+	private static void abort(final Part[] tasks) {
+		for (Part t : tasks) {
+			if (t != null) {
+				t.cancel(false);
+			}
+		}
+
+		try {
+			for (Part t : tasks) {
+				if (t != null) {
+					t.await();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the size of the next chunk of an adaptively chunked batch,
+	 * doubling it while chunks take well under the target time and halving
+	 * it when they take well over.
+	 */
+	private static int adapt(final int size, final long nanos) {
+		if (nanos < CHUNK_NANOS >> 1 && size < MAX_CHUNK) {
+			return size << 1;
+		}
 
-	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+		if (nanos > CHUNK_NANOS << 1 && size > MIN_CHUNK) {
+			return size >> 1;
+		}
 
-	public SQLBroker(final PooledDataSource dataSource) {
-		this.dataSource = dataSource;
+		return size;
 	}
 
-	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+	/**
+	 * Runs the update batch, then the insert batch of the rows whose update
+	 * count was zero, in one {@link Transaction}. The update count of each
+	 * row is stored in <code>counts</code> unless it is <code>null</code>.
+	 *
+	 * @return the number of rows inserted
+	 */
+	private int batch(final String updateSql, final BatchParams updates, final String insertSql, final BatchParams rows, final int[] counts) {
+		final boolean begun = !Transaction.isActive();
 
-	public final PooledDataSource getDataSource() {
-		return dataSource;
-	}
+		if (begun) {
+			Transaction.begin();
+		}
 
-	public final int execute(final String sql) {
-		log.debug("Executing SQL statement [{P}]", sql);
+		try {
+			final int[] updated = batch(updateSql, updates).results;
+			final BatchParams inserts = new BatchParams(Math.max(rows.size, 1));
+			final int[] index = new int[rows.size];
+
+			for (int i=0; i < updated.length; i++) {
+				if (updated[i] == 0) {
+					index[inserts.size] = i;
+					inserts.add(rows.values[i]);
+				}
+			}
 
-		final PooledConnection con = dataSource.getConnection();
-		Statement stmt = null;
+			if (counts != null) {
+				System.arraycopy(updated, 0, counts, 0, updated.length);
+			}
 
-		try {
-			stmt = con.createStatement();
-			return stmt.executeUpdate(sql);
-		} catch (SQLException e) {
-			throw new DatabaseException(sql, e);
-		} finally {
-			Jdbc.close(stmt);
-			con.close();
-		}
-	}
+			if (inserts.size > 0) {
+				final int[] inserted = batch(insertSql, inserts).results;
 
-	public final BatchResult batch(final String... stmts) {
-		log.debug("Batch executing SQL statements");
+				if (counts != null) {
+					for (int i=0; i < inserted.length; i++) {
+						counts[index[i]] = inserted[i];
+					}
+				}
+			}
 
-		final PooledConnection con = dataSource.getConnection();
-		Statement stmt = null;
+			if (begun) {
+				Transaction.commit();
+			}
 
-		try {
-			stmt = con.createStatement();
-			return new BatchResult(stmt, stmts);
-		} catch (BatchUpdateException e) {
-			throw new DatabaseException(new BatchResult(e.getUpdateCounts(), stmts).toString(), e);
-		} catch (SQLException e) {
-			throw new DatabaseException(e);
-		} finally {
-			Jdbc.close(stmt);
-			con.close();
+			return inserts.size;
+		} catch (RuntimeException e) {
+			if (begun) {
+				Transaction.rollback();
+			}
+
+			throw e;
 		}
 	}
 
-	public final BatchResult batch(final String sql, final BatchParams params) {
-		log.debug("Batch executing SQL statement [{P}] with {P} sets of parameters", sql, params.size);
-
-		final PooledConnection con = dataSource.getConnection();
+	/**
+	 * Runs the batch of a single row insert as statements inserting many
+	 * rows each, all but the last one of which are sent in one batch.
+	 */
+	private BatchResult batchRows(final String sql, final BatchParams params, final ValuesRewriter values, final int maxParams) {
+		final int rows = Math.min(values.getRows(maxParams), params.size);
+		final int chunks = params.size / rows;
+		final int rest = params.size % rows;
+		final int width = values.getWidth();
+		final int[] counts = new int[params.size];
+		final RowBinder binder = new RowBinder();
+		int done = 0;
+
+		log.debug("Batch executing SQL statement [{P}] with {P} sets of parameters as {P} rows per statement", sql, params.size, rows);
+
+		final PooledConnection con = getConnection();
 		PreparedStatement stmt = null;
 
 		try {
-			stmt = con.prepareStatement(sql);
-			for (int i=0; i < params.size; i++) {
-				prepare(stmt, params.values[i]).addBatch();
+			if (chunks > 0) {
+				stmt = prepareStatement(con, values.toSql(rows));
+				for (int c=0, r=0; c < chunks; c++) {
+					for (int i=0; i < rows; i++) {
+						binder.bind(stmt, params.values[r++], i * width);
+					}
+					stmt.addBatch();
+				}
+				AsyncCall.attach(stmt);
+
+				final int[] results = stmt.executeBatch();
+				for (int c=0; c < chunks; c++) {
+					ValuesRewriter.spread(results[c], counts, c * rows, rows);
+				}
+				done = chunks * rows;
+
+				AsyncCall.detach();
+				Jdbc.close(stmt);
+				stmt = null;
+			}
+
+			if (rest > 0) {
+				stmt = prepareStatement(con, values.toSql(rest));
+				for (int i=0; i < rest; i++) {
+					binder.bind(stmt, params.values[done + i], i * width);
+				}
+				AsyncCall.attach(stmt);
+
+				ValuesRewriter.spread(stmt.executeUpdate(), counts, done, rest);
+				done += rest;
 			}
-			return new BatchResult(sql, params, stmt);
+
+			TableChanges.publish(TableChanges.tableOf(sql));
+			return new BatchResult(sql, params, counts);
 		} catch (BatchUpdateException e) {
-			throw new DatabaseException(new BatchResult(sql, params, e.getUpdateCounts()).toString(), e);
+			final int[] results = e.getUpdateCounts();
+
+			done = Math.min(results.length, chunks) * rows;
+			for (int c=0; c < done / rows; c++) {
+				ValuesRewriter.spread(results[c], counts, c * rows, rows);
+			}
+
+			throw new DatabaseException(new BatchResult(sql, params, Arrays.copyOf(counts, done)).toString(), e);
 		} catch (SQLException e) {
-			throw new DatabaseException(sql, e);
+			throw new DatabaseException(new BatchResult(sql, params, Arrays.copyOf(counts, done)).toString(), e);
 		} finally {
+			AsyncCall.detach();
 			Jdbc.close(stmt);
 			con.close();
 		}
 	}
 
-	public final int batch(final String updateSql, final String insertSql, final BatchParams params) {
-		final BatchResult updateResult = batch(updateSql, params);
-		final BatchParams insertBatch = new BatchParams(params.size);
+	/**
+	 * Returns the row indices in the order they are partitioned in: by the
+	 * values of the key column, nulls first, or else as they are.
+	 */
+	private static int[] order(final BatchParams params, final int keyColumn) {
+		final int[] order = new int[params.size];
 
-		for (int i=0; i < updateResult.results.length; i++) {
-			if (updateResult.results[i] == 0) {
-				insertBatch.add(params.values[i]);
+		if (keyColumn < 0) {
+			for (int i=0; i < order.length; i++) {
+				order[i] = i;
 			}
+			return order;
 		}
 
-		if (insertBatch.size > 0) {
-			batch(insertSql, insertBatch);
+		final Integer[] rows = new Integer[params.size];
+		for (int i=0; i < rows.length; i++) {
+			rows[i] = i;
 		}
 
-		return insertBatch.size;
+		Arrays.sort(rows, new Comparator<Integer>() {
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			public int compare(final Integer a, final Integer b) {
+				final Comparable x = (Comparable) params.values[a][keyColumn];
+				final Comparable y = (Comparable) params.values[b][keyColumn];
+
+				return (x == null) ? ((y == null) ? 0 : -1) : ((y == null) ? 1 : x.compareTo(y));
+			}
+		});
+
+		for (int i=0; i < order.length; i++) {
+			order[i] = rows[i];
+		}
+		return order;
 	}
 
-	public final int count(final String sql, final Parameters params) {
+	/**
+	 * Returns the bounds of the parts within the ordered rows, part
+	 * <code>p</code> running from <code>bounds[p]</code> up to
+	 * <code>bounds[p + 1]</code>. A bound never falls between two rows
+	 * with the same key, so a part may be empty.
+	 */
+	private static int[] partition(final BatchParams params, final int[] order, final int parts, final int keyColumn) {
+		final int[] bounds = new int[parts + 1];
+		int b;
+
+		for (int p=1; p < parts; p++) {
+			b = Math.max((int) ((long) p * order.length / parts), bounds[p - 1]);
+
+			if (keyColumn >= 0) {
+				while (b > 0 && b < order.length && Root.equals(params.values[order[b]][keyColumn], params.values[order[b - 1]][keyColumn])) {
+					b++;
+				}
+			}
+
+			bounds[p] = b;
+		}
+
+		bounds[parts] = order.length;
+		return bounds;
+	}
+
+	private int countRows(final String sql, final Parameters params) {
 		log.debug("Counting rows with SQL query [{P}] and {P}", sql, params);
 
-		final PooledConnection con = dataSource.getConnection();
+		final PooledDataSource ds = route(sql);
+		final PooledConnection con = getConnection(ds);
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 
 		try {
-			stmt = prepare(con.prepareStatement(sql), params);
+			stmt = prepare(prepareStatement(con, sql), params);
 			rs = stmt.executeQuery();
 			rs.next();
 			return rs.getInt(0);
@@ -173,37 +1318,20 @@ public final class SQLBroker {
 		} finally {
 			Jdbc.close(stmt, rs);
 			con.close();
+			release(ds);
 		}
 	}
 
-	/**
-	 * Watch out and don't use a <code>SELECT COUNT()</code> query, use
-	 * something like <code>SELECT 1</code> instead.
-	 *
-	 * @param stmt
-	 * @return
-	 */
-	public final boolean exists(final Select stmt) {
-		return exists(stmt.toString(), stmt.getParams());
-	}
-
-	/**
-	 * Watch out and don't use a <code>SELECT COUNT()</code> query, use
-	 * something like <code>SELECT 1</code> instead.
-	 *
-	 * @param sql
-	 * @param params
-	 * @return
-	 */
-	public final boolean exists(final String sql, final Parameters params) {
+	private boolean existsRow(final String sql, final Parameters params) {
 		log.debug("Determining if {P} exists using SQL query [{P}]", params, sql);
 
-		final PooledConnection con = dataSource.getConnection();
+		final PooledDataSource ds = route(sql);
+		final PooledConnection con = getConnection(ds);
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 
 		try {
-			stmt = prepare(con.prepareStatement(sql), params);
+			stmt = prepare(prepareStatement(con, sql), params);
 			rs = stmt.executeQuery();
 			return rs.next();
 		} catch (SQLException e) {
@@ -211,23 +1339,62 @@ public final class SQLBroker {
 		} finally {
 			Jdbc.close(stmt, rs);
 			con.close();
+			release(ds);
 		}
 	}
 
-	public final int insert(final Insert stmt) {
-		return insert(stmt.toString(), stmt.getParams());
+	/**
+	 * Returns a connection to the primary database, or to the replica of
+	 * the {@link ReadOnly} transaction in progress.
+	 */
+	private PooledConnection getConnection() {
+		return getConnection(route(null));
 	}
 
-	public final int insert(final String sql, final Parameters params) {
+	/**
+	 * Returns a connection to the data source, marked read-only if it is a
+	 * replica.
+	 */
+	private PooledConnection getConnection(final PooledDataSource ds) {
+		if (ds == dataSource) {
+			return ds.getConnection();
+		}
+
+		PooledConnection con = null;
+
+		try {
+			con = ds.getConnection();
+			if (!con.isReadOnly()) {
+				con.setReadOnly(true);
+			}
+			return con;
+		} catch (SQLException e) {
+			con.close();
+			release(ds);
+			throw new DatabaseException("Could not mark the replica connection read-only", e);
+		} catch (RuntimeException e) {
+			release(ds);
+			throw e;
+		}
+	}
+
+	private String getErrorMessage(final String sql, final Parameters params) {
+		final StringExtractor builder = new StringExtractor(512);
+
+		return builder.append("An exception occurred while executing [").append(sql).append("] with ").append(params).toString();
+	}
+
+	private int insert(final String sql, final Parameters params, final String table) {
 		log.debug("Executing SQL insert [{P}] with {P}", sql, params);
 
-		final PooledConnection con = dataSource.getConnection();
+		final PooledConnection con = getConnection();
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 
 		try {
-			stmt = prepare(con.prepareStatement(sql), params);
+			stmt = prepare(prepareStatement(con, sql), params);
 			stmt.executeUpdate();
+			TableChanges.publish((table != null) ? table : TableChanges.tableOf(sql));
 			rs = stmt.getGeneratedKeys();
 			return (rs.next()) ? rs.getInt(1) : 0;
 		} catch (SQLException e) {
@@ -238,35 +1405,74 @@ public final class SQLBroker {
 		}
 	}
 
-	public final <T> T load(final String sql, final Parameters params, final Mapper<T> mapper) {
+	private UpdateResult update(final String sql, final Parameters params, final String table) {
+		log.debug("Executing SQL update [{P}] with {P}", sql, params);
+
+		final PooledConnection con = getConnection();
+		PreparedStatement stmt = null;
+
+		try {
+			stmt = prepare(prepareStatement(con, sql), params);
+			AsyncCall.attach(stmt);
+
+			final UpdateResult result = new UpdateResult(stmt.executeUpdate());
+			TableChanges.publish((table != null) ? table : TableChanges.tableOf(sql));
+			return result;
+		} catch (SQLException e) {
+			throw new DatabaseException(getErrorMessage(sql, params), e);
+		} finally {
+			AsyncCall.detach();
+			Jdbc.close(stmt);
+			con.close();
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> when reads go straight to the database,
+	 * bypassing the {@link ResultCache}, {@link NegativeCache}, and
+	 * {@link SingleFlight}.
+	 */
+	private boolean isDirect() {
+		return (results == null && negatives == null && flights == null) || Transaction.isActive();
+	}
+
+	private <T> T loadOne(final String sql, final Parameters params, final Mapper<T> mapper) {
 		log.debug("Loading {P} using SQL query [{P}] and {P}", mapper, sql, params);
 
-		final PooledConnection con = dataSource.getConnection();
+		final PooledDataSource ds = route(sql);
+		final PooledConnection con = getConnection(ds);
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 
 		try {
-			stmt = prepare(con.prepareStatement(sql), params);
+			stmt = prepare(prepareStatement(con, sql), params);
+			AsyncCall.attach(stmt);
 			rs = stmt.executeQuery();
+			ResultShape.bind(shapes, sql, rs);
 			return (rs.next()) ? mapper.map(rs) : null;
 		} catch (SQLException e) {
 			throw new DatabaseException(getErrorMessage(sql, params), e);
 		} finally {
+			ResultShape.unbind();
+			AsyncCall.detach();
 			Jdbc.close(stmt, rs);
 			con.close();
+			release(ds);
 		}
 	}
 
-	public final <T> ListArray<T> loadAll(final String sql, final Parameters params, final Mapper<T> mapper) {
+	private <T> ListArray<T> loadList(final String sql, final Parameters params, final Mapper<T> mapper) {
 		log.debug("Loading {P} using SQL query [{P}] and {P}", mapper, sql, params);
 
-		final PooledConnection con = dataSource.getConnection();
+		final PooledDataSource ds = route(sql);
+		final PooledConnection con = getConnection(ds);
 		PreparedStatement stmt = null;
 		ResultSet rs = null;
 
 		try {
-			stmt = prepare(con.prepareStatement(sql), params);
+			stmt = prepare(prepareStatement(con, sql), params);
 			rs = stmt.executeQuery();
+			ResultShape.bind(shapes, sql, rs);
 
 			final ListArray<T> list = new ListArray<>();
 			while (rs.next()) {
@@ -276,156 +1482,196 @@ public final class SQLBroker {
 		} catch (SQLException e) {
 			throw new DatabaseException(getErrorMessage(sql, params), e);
 		} finally {
+			ResultShape.unbind();
 			Jdbc.close(stmt, rs);
 			con.close();
+			release(ds);
 		}
 	}
 
-	public final QueryResult query(final Select stmt) {
-		final Parameters params = stmt.getParams();
+	/**
+	 * Returns <code>true</code> if every row has the number of parameters.
+	 */
+	private static boolean isRectangular(final BatchParams params, final int width) {
+		for (int i=0; i < params.size; i++) {
+			if (params.values[i].length != width) {
+				return false;
+			}
+		}
 
-		return (params.getSize() == 0) ? query(stmt.toString()) : query(stmt.toString(), params);
+		return true;
 	}
 
-	public final QueryResult query(final String sql) {
-		log.debug("Executing SQL query [{P}]", sql);
-
-		final PooledConnection con = dataSource.getConnection();
-		Statement stmt = null;
-		ResultSet rs = null;
+	/**
+	 * Returns <code>true</code> if the SQL is a query that may run on a
+	 * replica.
+	 */
+	private static boolean isQuery(final String sql) {
+		int i = 0;
 
-		try {
-			stmt = con.createStatement();
-			rs = stmt.executeQuery(sql);
-			return new QueryResult(con, stmt, rs);
-		} catch (SQLException e) {
-			Jdbc.close(stmt, rs);
-			con.close();
-			throw new DatabaseException(sql, e);
+		while (i < sql.length() && (Character.isWhitespace(sql.charAt(i)) || sql.charAt(i) == '(')) {
+			i++;
 		}
+
+		return (sql.regionMatches(true, i, "SELECT", 0, 6) || sql.regionMatches(true, i, "WITH", 0, 4)) && !LOCKING.matcher(sql).find();
 	}
 
-	public final QueryResult query(final String sql, final Parameters params) {
-		log.debug("Executing SQL query [{P}] with {P}", sql, params);
+	/**
+	 * Answers the read from the {@link ResultCache} if it has a policy for
+	 * the SQL, or from the {@link NegativeCache} if it is a known miss.
+	 * Otherwise runs it, joining an identical read in flight when
+	 * coalescing is on, and caches the result.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T read(final int kind, final String sql, final Parameters params, final Mapper<?> mapper, final Callable<T> call) {
+		final QueryKey key = new QueryKey(kind, sql, params, mapper);
+		final ResultCache c = results;
+		final ResultCache.Policy policy = (c == null) ? null : c.getPolicy(sql);
+		final NegativeCache n = (policy != null || (kind != QueryKey.LOAD && kind != QueryKey.EXISTS)) ? null : negatives;
+		final SingleFlight f = flights;
+		long[] stamp = null;
+		T val;
+
+		if (policy != null) {
+			final Object o = c.get(key);
+
+			if (o != c) {
+				log.debug("Result cache returned {P} for {P}", o, key);
+				return (T) o;
+			}
 
-		final PooledConnection con = dataSource.getConnection();
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
+			stamp = c.getStamp(policy);
+		} else if (n != null) {
+			if (n.contains(key)) {
+				log.debug("Negative cache has no row for {P}", key);
+				return (kind == QueryKey.EXISTS) ? (T) Boolean.FALSE : null;
+			}
+
+			stamp = n.getStamp(sql);
+		}
+
+		// A replica may not have the latest writes yet, so a result that
+		// stays cached until its TTL must come from the primary database
+		final boolean caching = (policy != null || stamp != null) && replicas != null;
+
+		if (caching) {
+			cachingRead.set(Boolean.TRUE);
+		}
 
 		try {
-			stmt = prepare(con.prepareStatement(sql), params);
-			rs = stmt.executeQuery();
-			return new QueryResult(con, stmt, rs);
-		} catch (SQLException e) {
-			Jdbc.close(stmt, rs);
-			con.close();
+			if (f != null) {
+				val = f.run(key, call);
+			} else {
+				val = call.call();
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
 			throw new DatabaseException(getErrorMessage(sql, params), e);
+		} finally {
+			if (caching) {
+				cachingRead.remove();
+			}
 		}
-	}
 
-	public final QueryResult query(final Select stmt, final int maxRows, final int seconds) {
-		return query(stmt.toString(), stmt.getParams(), maxRows, seconds);
-	}
+		if (policy != null) {
+			c.put(key, val, policy, stamp);
+		} else if (stamp != null && (val == null || val == Boolean.FALSE)) {
+			n.put(key, stamp);
+		}
 
-	public final QueryResult query(final String sql, final Parameters params, final int maxRows, final int seconds) {
-		log.debug("Executing SQL query [{P}] with {P}, maxRows={P}, seconds={P}", sql, params, maxRows, seconds);
+		return val;
+	}
 
-		final PooledConnection con = dataSource.getConnection();
-		PreparedStatement stmt = null;
-		ResultSet rs = null;
+	private PreparedStatement prepare(final PreparedStatement stmt, final Object[] params) throws SQLException {
+		return prepare(stmt, params, 0);
+	}
 
-		try {
-			stmt = prepare(con.prepareStatement(sql), params);
-			if (maxRows > 0) stmt.setMaxRows(maxRows);
-			if (seconds > 0) stmt.setQueryTimeout(seconds);
-			rs = stmt.executeQuery();
-			return new QueryResult(con, stmt, rs);
-		} catch (SQLException e) {
-			Jdbc.close(stmt, rs);
-			con.close();
-			throw new DatabaseException(getErrorMessage(sql, params), e);
+	/**
+	 * Binds the parameters to the {@link PreparedStatement} starting after
+	 * the <code>offset</code> parameters already bound.
+	 */
+	private PreparedStatement prepare(final PreparedStatement stmt, final Object[] params, final int offset) throws SQLException {
+		for (int p=0; p < params.length; p++) {
+			RowBinder.bind(stmt, offset + p + 1, params[p]);
 		}
+
+		return stmt;
 	}
 
-	public final UpdateResult update(final SQL stmt) {
-		return update(stmt.toString(), stmt.getParams());
+	private PreparedStatement prepare(final PreparedStatement stmt, final Parameters params) throws SQLException {
+		params.bind(stmt);
+		return stmt;
 	}
 
-	public final UpdateResult update(final String sql, final Parameters params) {
-		log.debug("Executing SQL update [{P}] with {P}", sql, params);
+	private PreparedStatement prepareStatement(final PooledConnection con, final String sql) throws SQLException {
+		return (stmtCache == null) ? con.prepareStatement(sql) : con.prepareStatement(stmtCache.get(sql));
+	}
 
-		final PooledConnection con = dataSource.getConnection();
-		PreparedStatement stmt = null;
+	/**
+	 * Hands a replica chosen by <code>route()</code> for a single read back
+	 * to the {@link Balancer}.
+	 */
+	private void release(final PooledDataSource ds) {
+		final Balancer b = replicas;
 
-		try {
-			stmt = prepare(con.prepareStatement(sql), params);
-			return new UpdateResult(stmt.executeUpdate());
-		} catch (SQLException e) {
-			throw new DatabaseException(getErrorMessage(sql, params), e);
-		} finally {
-			Jdbc.close(stmt);
-			con.close();
+		if (ds != dataSource && b != null && !Transaction.isActive()) {
+			b.release(ds);
 		}
 	}
 
-	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+	/**
+	 * Returns the data source to run the SQL on: the replica of the
+	 * {@link ReadOnly} transaction in progress, a replica chosen by the
+	 * {@link Balancer} for a query made outside a transaction whose result
+	 * is not about to be cached, or else the primary database. Pass <code>null</code> for SQL that must not leave
+	 * the transaction or the primary database.
+	 */
+	private PooledDataSource route(final String sql) {
+		final Balancer b = replicas;
 
-	private String getErrorMessage(final String sql, final Parameters params) {
-		final StringExtractor builder = new StringExtractor(512);
+		if (b == null) {
+			return dataSource;
+		}
 
-		return builder.append("An exception occurred while executing [").append(sql).append("] with ").append(params).toString();
+		if (Transaction.isActive()) {
+			return (ReadOnly.isActive()) ? ReadOnly.getReplica(b) : dataSource;
+		}
+
+		return (sql != null && cachingRead.get() == null && isQuery(sql)) ? b.acquire() : dataSource;
 	}
 
-	private PreparedStatement prepare(final PreparedStatement stmt, final Object[] params) throws SQLException {
-		Object o;
-		Class<?> clazz;
-
-		for (int i=0; i < params.length;) {
-			o = params[i++];
-
-			if (o == null)
-				stmt.setNull(i, Types.VARCHAR);
-			else {
-				clazz = o.getClass();
-
-				if (clazz == String.class)
-					stmt.setString(i, (String) o);
-				else if (clazz == BigDecimal.class)
-					stmt.setBigDecimal(i, (BigDecimal) o);
-				else if (clazz == Integer.class)
-					stmt.setInt(i, (Integer) o);
-				else if (clazz == Timestamp.class)
-					stmt.setTimestamp(i, (Timestamp) o);
-				else if (clazz == Character.class)
-					stmt.setString(i, o.toString());
-				else if (clazz == Boolean.class)
-					stmt.setBoolean(i, (Boolean) o);
-				else if (clazz == Date.class)
-					stmt.setDate(i, new java.sql.Date(((Date) o).getTime()));
-				else if (clazz == Long.class)
-					stmt.setLong(i, (Long) o);
-				else if (clazz == Float.class)
-					stmt.setFloat(i, (Float) o);
-				else if (clazz == Short.class)
-					stmt.setShort(i, (Short) o);
-				else if (clazz == Double.class)
-					stmt.setDouble(i, (Double) o);
-				else if (clazz == Time.class)
-					stmt.setTime(i, (Time) o);
-				else
-					stmt.setObject(i, o);
-			}
+	private <V> Future<V> submit(final Callable<V> callable, final Parameters params, final long timeoutMillis) {
+		return new AsyncCall<>(callable).pin(params).submit((executor == null) ? AsyncCall.getDefaultExecutor() : executor, timeoutMillis);
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	/**
+	 * A part of a parallel batch, which can be awaited even once cancelled.
+	 */
+	private static final class Part extends FutureTask<BatchResult> {
+
+		/** Counted down once the executor has run, or skipped, the part	*/
+		private final CountDownLatch ran = new CountDownLatch(1);
+
+		private Part(final Callable<BatchResult> callable) {
+			super(callable);
 		}
 
-		return stmt;
-	}
+		@Override
+		public final void run() {
+			try {
+				super.run();
+			} finally {
+				ran.countDown();
+			}
+		}
 
-	private PreparedStatement prepare(final PreparedStatement stmt, final Parameters params) throws SQLException {
-		for (Value v : params.getValues()) {
-			v.setValue(stmt);
+		private void await() throws InterruptedException {
+			ran.await();
 		}
 
-		return stmt;
-	}
+	}	// End Part
 
 }
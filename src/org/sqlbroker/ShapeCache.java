@@ -0,0 +1,59 @@
+package org.sqlbroker;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import root.cache.CacheLRU;
+
+/**
+ * A bounded cache of the {@link ResultShape} of each SQL query. A cached
+ * shape is only trusted while the driver keeps reporting the same column
+ * count for the query, which costs a single <code>getColumnCount()</code>
+ * call instead of walking the labels, types, and precisions of every
+ * column. A shape whose column count no longer matches, e.g. after the
+ * table behind a <code>SELECT *</code> was altered, is read again and
+ * replaces the cached one.
+ *
+ * @author esmith
+ */
+final class ShapeCache {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The most recent {@link ResultShape} of each SQL query			*/
+	private final CacheLRU<String, ResultShape> cache;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	ShapeCache(final int capacity) {
+		cache = new CacheLRU<>(capacity);
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the {@link ResultShape} of the {@link ResultSet} produced by
+	 * the SQL query, reading it from the metadata only when it is not cached
+	 * or its column count has changed.
+	 */
+	final ResultShape get(final String sql, final ResultSet rs) throws SQLException {
+		final ResultSetMetaData meta = rs.getMetaData();
+		ResultShape shape;
+
+		synchronized (cache) {
+			shape = cache.get(sql);
+		}
+
+		if (shape == null || shape.getColumnCount() != meta.getColumnCount()) {
+			shape = new ResultShape(meta);
+
+			synchronized (cache) {
+				cache.put(sql, shape);
+			}
+		}
+
+		return shape;
+	}
+
+}	// End ShapeCache
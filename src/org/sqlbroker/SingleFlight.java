@@ -0,0 +1,127 @@
+package org.sqlbroker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sqlbroker.mapper.Mapper;
+
+import root.jdbc.DatabaseException;
+import root.lang.Extractable;
+import root.lang.StringExtractor;
+import root.log.Log;
+
+/**
+ * Coalesces identical reads that are in flight at the same time. The first
+ * caller of a (SQL, {@link Parameters}, {@link Mapper}) combination runs
+ * the query; every caller that asks for the same combination before it
+ * completes waits for that execution and receives the very same mapped
+ * result, or a {@link DatabaseException} caused by the same failure. Only
+ * one pooled connection is used no matter how many callers pile up.
+ *
+ * Since callers share one result object, it must not be modified. A
+ * {@link Mapper} is compared with <code>equals()</code>, so mappers that
+ * do not override it only coalesce when the same instance is used.
+ *
+ * @author esmith
+ */
+public final class SingleFlight implements Extractable {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(SingleFlight.class);
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The executions in flight										*/
+	private final ConcurrentHashMap<QueryKey, FutureTask<Object>> flights;
+
+	/** Number of reads that went to the database						*/
+	private final AtomicLong executions;
+
+	/** Number of reads that joined an execution already in flight		*/
+	private final AtomicLong coalesced;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	SingleFlight() {
+		flights = new ConcurrentHashMap<>();
+		executions = new AtomicLong();
+		coalesced = new AtomicLong();
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	public final long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public final long getExecutions() {
+		return executions.get();
+	}
+
+	/**
+	 * Returns the number of executions currently in flight.
+	 */
+	public final int getSize() {
+		return flights.size();
+	}
+
+	@Override
+	public final void extract(final StringExtractor extractor) {
+		extractor.append("SingleFlight [inFlight=").append(flights.size());
+		extractor.append(", executions=").append(executions.get());
+		extractor.append(", coalesced=").append(coalesced.get());
+		extractor.append(']');
+	}
+
+	@Override
+	public final String toString() {
+		final StringExtractor chars = new StringExtractor(96);
+		extract(chars);
+		return chars.toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Runs the read, or waits for the identical read already in flight.
+	 */
+	@SuppressWarnings("unchecked")
+	final <T> T run(final QueryKey key, final Callable<T> read) {
+		final FutureTask<Object> task = new FutureTask<>((Callable<Object>) read);
+		FutureTask<Object> flight = flights.putIfAbsent(key, task);
+
+		if (flight == null) {
+			executions.incrementAndGet();
+			flight = task;
+
+			try {
+				task.run();
+			} finally {
+				flights.remove(key, task);
+			}
+		} else {
+			coalesced.incrementAndGet();
+			log.debug("Joining the execution of [{P}] already in flight", key);
+		}
+
+		try {
+			return (T) flight.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException("Interrupted while waiting for a coalesced read", e);
+		} catch (ExecutionException e) {
+			final Throwable t = e.getCause();
+
+			if (flight == task && t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+
+			throw new DatabaseException("Coalesced read of [" + key.getSql() + "] failed", t);
+		}
+	}
+
+}	// End SingleFlight
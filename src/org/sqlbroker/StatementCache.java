@@ -0,0 +1,98 @@
+package org.sqlbroker;
+
+import root.cache.CacheLRU;
+import root.jdbc.CachedSQLStatement;
+import root.jdbc.PooledConnection;
+import root.jdbc.PooledDataSource;
+import root.lang.Extractable;
+import root.lang.StringExtractor;
+
+/**
+ * Maps SQL text onto the canonical {@link CachedSQLStatement} instance used
+ * as the key of each {@link PooledConnection} statement cache. Because a
+ * {@link CachedSQLStatement} is compared by identity, every SQLBroker call
+ * with the same SQL text must hand the same instance to the connection in
+ * order for the cached {@link java.sql.PreparedStatement} to be found.
+ *
+ * The cache is bounded by the statement cache size configured on the
+ * {@link PooledDataSource} and evicts the least recently used SQL text. The
+ * per-connection caches follow the same LRU order, so a statement evicted
+ * here soon ages out of every connection as well.
+ *
+ * @author esmith
+ */
+public final class StatementCache implements Extractable {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** Number of lookups that found a canonical statement				*/
+	private long hits;
+
+	/** Number of lookups that had to create a canonical statement		*/
+	private long misses;
+
+	/** Number of canonical statements pushed out by the LRU			*/
+	private long evictions;
+
+	/** The canonical {@link CachedSQLStatement} for each SQL text		*/
+	private final CacheLRU<String, CachedSQLStatement> cache;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	StatementCache(final int capacity) {
+		cache = new CacheLRU<>(capacity);
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	public final synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public final synchronized long getHits() {
+		return hits;
+	}
+
+	public final synchronized long getMisses() {
+		return misses;
+	}
+
+	public final synchronized int getSize() {
+		return cache.getSize();
+	}
+
+	@Override
+	public final synchronized void extract(final StringExtractor extractor) {
+		extractor.append("StatementCache [size=").append(cache.getSize());
+		extractor.append(", hits=").append(hits);
+		extractor.append(", misses=").append(misses);
+		extractor.append(", evictions=").append(evictions);
+		extractor.append(']');
+	}
+
+	@Override
+	public final String toString() {
+		final StringExtractor chars = new StringExtractor(128);
+		extract(chars);
+		return chars.toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	final synchronized CachedSQLStatement get(final String sql) {
+		CachedSQLStatement cachedSql = cache.get(sql);
+
+		if (cachedSql != null) {
+			hits++;
+		} else {
+			misses++;
+			cachedSql = new CachedSQLStatement(sql);
+			if (cache.put(sql, cachedSql) != null) {
+				evictions++;
+			}
+		}
+
+		return cachedSql;
+	}
+
+}	// End StatementCache
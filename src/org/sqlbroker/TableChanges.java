@@ -0,0 +1,302 @@
+package org.sqlbroker;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import root.adt.ListArray;
+import root.adt.SetHashed;
+import root.jdbc.Transaction;
+import root.log.Log;
+
+/**
+ * Publishes the tables written by SQLBroker to whoever caches data read from
+ * them, such as the {@link org.sqlbroker.annotation.Cached} methods of a
+ * {@link org.sqlbroker.proxy.CacheProxy}. Every successful insert, update,
+ * delete, batch, or DDL statement publishes the table it wrote to. The
+ * {@link org.sqlbroker.helper.Insert}, {@link org.sqlbroker.helper.Update},
+ * and {@link org.sqlbroker.helper.Delete} helpers name their table, and the
+ * table of raw SQL is taken from its leading clause. When the table of a
+ * write cannot be determined, every listener is notified once.
+ *
+ * Table names are matched case-insensitively and without quotes or schema,
+ * so <code>"Sales".ORDERS</code> and <code>orders</code> are the same table.
+ *
+ * A write made inside a {@link Transaction} is published right away and
+ * once more when the transaction ends, because another thread may cache
+ * the old rows again until the write is committed. The
+ * {@link org.sqlbroker.proxy.TransactionProxy} does so itself; for
+ * transactions managed by hand, the pending tables are published by the
+ * next write outside of a transaction on the same thread, or by calling
+ * <code>flush()</code>.
+ *
+ * Listeners are held weakly, so subscribing does not keep a cache alive.
+ *
+ * @author esmith
+ */
+public final class TableChanges {
+
+	/**
+	 * Is notified whenever a table it subscribed to is written to.
+	 */
+	public interface Listener {
+
+		void tableChanged(String table);
+
+	}	// End Listener
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	private static final Log log = new Log(TableChanges.class);
+
+	/** Published when the table of a write is unknown					*/
+	static final String ALL_TABLES = "*";
+
+	/** Finds a subquery, whose tables are not told apart by <code>tablesRead()</code>	*/
+	private static final Pattern subquery = Pattern.compile("\\(\\s*(SELECT|WITH)\\b", Pattern.CASE_INSENSITIVE);
+
+	/** The listeners subscribed to each table							*/
+	private static final ConcurrentHashMap<String, CopyOnWriteArrayList<WeakReference<Listener>>> listeners = new ConcurrentHashMap<>();
+
+	/** The tables written by the transaction of the current thread		*/
+	private static final ThreadLocal<SetHashed<String>> pending = new ThreadLocal<SetHashed<String>>() {
+		@Override
+		protected SetHashed<String> initialValue() {
+			return new SetHashed<>();
+		}
+	};
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	private TableChanges() {}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Subscribes the {@link Listener} to writes made to any of the tables.
+	 *
+	 * @param listener the {@link Listener} to notify
+	 * @param tables the tables the listener depends on
+	 */
+	public static final void subscribe(final Listener listener, final String... tables) {
+		final WeakReference<Listener> ref = new WeakReference<>(listener);
+		CopyOnWriteArrayList<WeakReference<Listener>> list;
+
+		for (String t : tables) {
+			t = normalize(t);
+			list = listeners.get(t);
+
+			if (list == null) {
+				final CopyOnWriteArrayList<WeakReference<Listener>> l = new CopyOnWriteArrayList<>();
+
+				list = listeners.putIfAbsent(t, l);
+				if (list == null) {
+					list = l;
+				}
+			}
+
+			list.add(ref);
+		}
+	}
+
+	/**
+	 * Notifies the listeners of every table that was written to.
+	 *
+	 * @param tables the tables that were written to
+	 */
+	public static final void publish(final String... tables) {
+		final SetHashed<String> p = pending.get();
+		final boolean inTxn = Transaction.isActive();
+
+		if (!inTxn && !p.isEmpty()) {
+			flush();
+		}
+
+		for (String t : tables) {
+			t = (t == null) ? ALL_TABLES : normalize(t);
+
+			if (inTxn) {
+				p.add(t);
+			}
+
+			fire(t);
+		}
+	}
+
+	/**
+	 * Publishes once more the tables written during the transaction that
+	 * just ended on the current thread.
+	 */
+	public static final void flush() {
+		final SetHashed<String> p = pending.get();
+
+		if (!p.isEmpty()) {
+			final Object[] tables = p.toArray();
+
+			p.clear();
+			for (Object t : tables) {
+				fire((String) t);
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Strips the schema and any identifier quotes and lower cases the rest.
+	 */
+	static final String normalize(final String table) {
+		final int dot = table.lastIndexOf('.');
+		final String name = (dot < 0) ? table : table.substring(dot + 1);
+
+		return name.replaceAll("[\"`\\[\\]]", "").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Returns the normalized tables named in the <code>FROM</code> and
+	 * <code>JOIN</code> clauses of the SQL query, or <code>null</code> if
+	 * they cannot be told for sure, e.g. when the query has a subquery.
+	 */
+	static final String[] tablesRead(final String sql) {
+		final String[] words = sql.replace(",", " , ").trim().split("[\\s;]+");
+		final ListArray<String> tables = new ListArray<>();
+		boolean inFrom = false;
+		String w;
+
+		if (subquery.matcher(sql).find()) {
+			return null;
+		}
+
+		for (int i=0; i < words.length; i++) {
+			w = words[i];
+
+			switch (w.toUpperCase(Locale.ROOT)) {
+				case "FROM":
+				case "JOIN":
+					inFrom = true;
+					if (++i == words.length || words[i].startsWith("(")) {
+						return null;
+					}
+					tables.add(normalize(words[i]));
+					break;
+				case ",":
+					if (inFrom) {
+						if (++i == words.length || words[i].startsWith("(")) {
+							return null;
+						}
+						tables.add(normalize(words[i]));
+					}
+					break;
+				case "WHERE":
+				case "ON":
+				case "USING":
+				case "GROUP":
+				case "HAVING":
+				case "ORDER":
+				case "LIMIT":
+				case "UNION":
+				case "SELECT":
+					inFrom = false;
+					break;
+				default:
+			}
+		}
+
+		return (tables.isEmpty()) ? null : tables.toArray(new String[tables.getSize()]);
+	}
+
+	/**
+	 * Returns the table written by the SQL statement, or <code>null</code> if
+	 * its leading clause does not name one.
+	 */
+	static final String tableOf(final String sql) {
+		final String[] words = sql.trim().split("[\\s(;,]+", 8);
+		int i;
+
+		if (words.length < 2) {
+			return null;
+		}
+
+		switch (words[0].toUpperCase(Locale.ROOT)) {
+			case "INSERT":
+			case "REPLACE":
+			case "MERGE":
+				i = skip(words, 1, "LOW_PRIORITY", "DELAYED", "HIGH_PRIORITY", "IGNORE", "INTO");
+				break;
+			case "UPDATE":
+				i = skip(words, 1, "LOW_PRIORITY", "IGNORE", "ONLY");
+				break;
+			case "DELETE":
+				i = skip(words, 1, "LOW_PRIORITY", "QUICK", "IGNORE", "FROM", "ONLY");
+				break;
+			case "TRUNCATE":
+				i = skip(words, 1, "TABLE", "ONLY");
+				break;
+			case "ALTER":
+			case "DROP":
+				i = (words[1].equalsIgnoreCase("TABLE")) ? skip(words, 2, "IF", "EXISTS", "ONLY") : words.length;
+				break;
+			default:
+				i = words.length;
+		}
+
+		return (i < words.length) ? words[i] : null;
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private static void fire(final String table) {
+		log.debug("Table {P} changed", table);
+
+		if (table.equals(ALL_TABLES)) {
+			// A listener subscribed to several tables is only notified once
+			final SetHashed<Listener> notified = new SetHashed<>();
+
+			for (CopyOnWriteArrayList<WeakReference<Listener>> list : listeners.values()) {
+				fire(list, table, notified);
+			}
+		} else {
+			final CopyOnWriteArrayList<WeakReference<Listener>> list = listeners.get(table);
+
+			if (list != null) {
+				fire(list, table, null);
+			}
+		}
+	}
+
+	private static void fire(final CopyOnWriteArrayList<WeakReference<Listener>> list, final String table, final SetHashed<Listener> notified) {
+		Listener l;
+		WeakReference<Listener> ref;
+
+		for (Iterator<WeakReference<Listener>> i = list.iterator(); i.hasNext();) {
+			ref = i.next();
+			l = ref.get();
+
+			if (l == null) {
+				list.remove(ref);
+			} else if (notified == null || notified.add(l)) {
+				l.tableChanged(table);
+			}
+		}
+	}
+
+	private static int skip(final String[] words, int i, final String... keywords) {
+		next:
+		while (i < words.length) {
+			for (String k : keywords) {
+				if (words[i].equalsIgnoreCase(k)) {
+					i++;
+					continue next;
+				}
+			}
+
+			break;
+		}
+
+		return i;
+	}
+
+}	// End TableChanges
@@ -0,0 +1,232 @@
+package org.sqlbroker;
+
+import java.sql.Statement;
+
+/**
+ * Rewrites an <code>INSERT ... VALUES (?, ...)</code> statement into one
+ * inserting several rows at once with <code>VALUES (?, ...), (?, ...)</code>,
+ * so that a batch costs the database one statement per chunk of rows
+ * instead of one per row. The row of values may only be followed by an
+ * <code>ON DUPLICATE KEY UPDATE</code> clause without parameters of its
+ * own, which MySQL applies to the rows of a statement in order, so a key
+ * repeated within one chunk is inserted and then updated just like in
+ * separate statements. Any other clause is left alone: PostgreSQL rejects
+ * an <code>ON CONFLICT DO UPDATE</code> that touches the same row twice,
+ * and a <code>RETURNING</code> clause cannot run in a batch.
+ *
+ * @author esmith
+ */
+final class ValuesRewriter {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The statement up to and including the <code>VALUES</code> keyword	*/
+	private final String prefix;
+
+	/** The parenthesized row of parameter markers						*/
+	private final String row;
+
+	/** The rest of the statement after the row							*/
+	private final String suffix;
+
+	/** The number of parameters of one row								*/
+	private final int width;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	private ValuesRewriter(final String prefix, final String row, final String suffix, final int width) {
+		this.prefix = prefix;
+		this.row = row;
+		this.suffix = suffix;
+		this.width = width;
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the rewriter of the statement, or <code>null</code> if it is
+	 * not a single row <code>INSERT</code> that can be rewritten.
+	 */
+	static final ValuesRewriter parse(final String sql) {
+		final String s = sql.trim();
+		final int values = find(s, "VALUES");
+		int open, close;
+
+		if (values < 0 || !(s.regionMatches(true, 0, "INSERT", 0, 6) || s.regionMatches(true, 0, "REPLACE", 0, 7))) {
+			return null;
+		}
+
+		for (open = values + 6; open < s.length() && Character.isWhitespace(s.charAt(open)); open++);
+
+		if (open == s.length() || s.charAt(open) != '(' || (close = skip(s, open)) < 0) {
+			return null;
+		}
+
+		final String prefix = s.substring(0, values + 6);
+		final String row = s.substring(open, close + 1);
+		final String suffix = s.substring(close + 1);
+		final int width = count(row);
+
+		if (width == 0 || count(prefix) > 0 || count(suffix) > 0 || !(suffix.trim().isEmpty() || startsWith(suffix.trim(), "ON DUPLICATE KEY"))
+				|| find(suffix, "RETURNING") >= 0) {
+			return null;
+		}
+
+		return new ValuesRewriter(prefix, row, suffix, width);
+	}
+
+	/**
+	 * Spreads the update count of a statement inserting <code>rows</code>
+	 * rows over the rows, which is only exact when every row counted the
+	 * same.
+	 */
+	static final void spread(final int count, final int[] counts, final int from, final int rows) {
+		final int each;
+
+		if (count == Statement.EXECUTE_FAILED || count == Statement.SUCCESS_NO_INFO) {
+			each = count;
+		} else if (count % rows == 0) {
+			each = count / rows;
+		} else {
+			each = Statement.SUCCESS_NO_INFO;
+		}
+
+		for (int i=from; i < from + rows; i++) {
+			counts[i] = each;
+		}
+	}
+
+	/**
+	 * Returns the number of rows per statement that keeps it within the
+	 * maximum number of parameters.
+	 */
+	final int getRows(final int maxParams) {
+		return Math.max(maxParams / width, 1);
+	}
+
+	final int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the statement inserting the number of rows.
+	 */
+	final String toSql(final int rows) {
+		final StringBuilder builder = new StringBuilder(prefix.length() + suffix.length() + (row.length() + 1) * rows + 1);
+
+		builder.append(prefix).append(' ').append(row);
+		for (int i=1; i < rows; i++) {
+			builder.append(',').append(row);
+		}
+
+		return builder.append(suffix).toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Counts the parameter markers outside of quotes.
+	 */
+	private static int count(final String s) {
+		int n = 0;
+		char quote = 0, c;
+
+		for (int i=0; i < s.length(); i++) {
+			c = s.charAt(i);
+
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '?') {
+				n++;
+			}
+		}
+
+		return n;
+	}
+
+	/**
+	 * Returns the index of the keyword outside of quotes and parentheses,
+	 * or -1 if there is none.
+	 */
+	private static int find(final String s, final String keyword) {
+		final int k = keyword.length();
+		int depth = 0;
+		char quote = 0, c;
+
+		for (int i=0; i < s.length(); i++) {
+			c = s.charAt(i);
+
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (depth == 0 && s.regionMatches(true, i, keyword, 0, k)
+					&& (i == 0 || !Character.isLetterOrDigit(s.charAt(i - 1)))
+					&& (i + k == s.length() || !Character.isLetterOrDigit(s.charAt(i + k)))) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Tells whether the statement starts with the words, ignoring case and
+	 * separated by any whitespace.
+	 */
+	private static boolean startsWith(final String s, final String words) {
+		int i = 0;
+
+		for (String w : words.split(" ")) {
+			while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+				i++;
+			}
+
+			if (!s.regionMatches(true, i, w, 0, w.length())) {
+				return false;
+			}
+
+			i += w.length();
+		}
+
+		return i == s.length() || !Character.isLetterOrDigit(s.charAt(i));
+	}
+
+	/**
+	 * Returns the index of the parenthesis closing the one at
+	 * <code>open</code>, or -1 if it is not closed.
+	 */
+	private static int skip(final String s, final int open) {
+		int depth = 0;
+		char quote = 0, c;
+
+		for (int i=open; i < s.length(); i++) {
+			c = s.charAt(i);
+
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '\'' || c == '"' || c == '`') {
+				quote = c;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')' && --depth == 0) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+}	// End ValuesRewriter
@@ -10,6 +10,9 @@ import java.lang.annotation.Target;
 public @interface Cached {
 
 	int size();
-	long ttl()		default 0;
+	long ttl()			default 0;
+
+	/** The tables whose changes evict the cached results		*/
+	String[] tables()	default {};
 
 }	// End Cache
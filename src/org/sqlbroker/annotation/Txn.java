@@ -13,4 +13,19 @@ public @interface Txn {
 
 	TransactionIsolationLevel value() default TransactionIsolationLevel.DEFAULT;
 
+	/** Whether to run the transaction read-only on a replica, see {@link org.sqlbroker.ReadOnly}	*/
+	boolean readOnly()		default false;
+
+	/** The number of times to run the transaction before giving up		*/
+	int attempts()			default 1;
+
+	/** The upper bound of the first backoff in milliseconds, doubled on every retry	*/
+	long backoff()			default 20;
+
+	/** The upper bound of any backoff in milliseconds					*/
+	long maxBackoff()		default 1000;
+
+	/** The SQLState prefixes of the failures worth retrying, by default every transaction rollback	*/
+	String[] retryOn()		default {"40"};
+
 } // End Txn
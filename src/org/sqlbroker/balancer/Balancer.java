@@ -0,0 +1,19 @@
+package org.sqlbroker.balancer;
+
+import root.jdbc.PooledDataSource;
+
+/**
+ * Chooses the replica {@link PooledDataSource} each read routed away from
+ * the primary database runs on. Every replica returned by
+ * <code>acquire()</code> is handed back to <code>release()</code> once the
+ * read or read-only transaction is done with it.
+ *
+ * @author esmith
+ */
+public interface Balancer {
+
+	PooledDataSource acquire();
+
+	void release(PooledDataSource replica);
+
+}	// End Balancer
@@ -0,0 +1,95 @@
+package org.sqlbroker.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import root.jdbc.PooledDataSource;
+
+/**
+ * Hands out the replica with the fewest reads in progress, so that a
+ * replica slowed down by long reads or lag gets fewer new ones. Ties are
+ * broken in turn. The counts are read without locking, so two concurrent
+ * reads may both pick the same replica.
+ *
+ * @author esmith
+ */
+public final class LeastOutstandingBalancer implements Balancer {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	private final PooledDataSource[] replicas;
+
+	/** The number of reads in progress on each replica					*/
+	private final AtomicIntegerArray outstanding;
+
+	/** Where the search for the least busy replica starts				*/
+	private final AtomicInteger start;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	public LeastOutstandingBalancer(final PooledDataSource... replicas) {
+		if (replicas.length == 0) {
+			throw new IllegalArgumentException("At least one replica is required");
+		}
+
+		this.replicas = replicas.clone();
+		this.outstanding = new AtomicIntegerArray(replicas.length);
+		this.start = new AtomicInteger();
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final PooledDataSource acquire() {
+		final int n = replicas.length;
+		final int first = (start.getAndIncrement() & Integer.MAX_VALUE) % n;
+		int best = first, min = outstanding.get(first), count;
+
+		for (int i=1; i < n && min > 0; i++) {
+			final int j = (first + i) % n;
+
+			count = outstanding.get(j);
+			if (count < min) {
+				best = j;
+				min = count;
+			}
+		}
+
+		outstanding.incrementAndGet(best);
+		return replicas[best];
+	}
+
+	/**
+	 * Returns the number of reads in progress on the replica.
+	 *
+	 * @param replica the replica
+	 * @return the number of reads in progress, or -1 for an unknown replica
+	 */
+	public final int getOutstanding(final PooledDataSource replica) {
+		final int i = indexOf(replica);
+
+		return (i < 0) ? -1 : outstanding.get(i);
+	}
+
+	@Override
+	public final void release(final PooledDataSource replica) {
+		final int i = indexOf(replica);
+
+		if (i >= 0) {
+			outstanding.decrementAndGet(i);
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private int indexOf(final PooledDataSource replica) {
+		for (int i=0; i < replicas.length; i++) {
+			if (replicas[i] == replica) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+}	// End LeastOutstandingBalancer
@@ -0,0 +1,45 @@
+package org.sqlbroker.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import root.jdbc.PooledDataSource;
+
+/**
+ * Hands out the replicas in turn, which spreads the reads evenly as long
+ * as they take about the same time.
+ *
+ * @author esmith
+ */
+public final class RoundRobinBalancer implements Balancer {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	private final PooledDataSource[] replicas;
+
+	/** The number of replicas handed out so far						*/
+	private final AtomicInteger next;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	public RoundRobinBalancer(final PooledDataSource... replicas) {
+		if (replicas.length == 0) {
+			throw new IllegalArgumentException("At least one replica is required");
+		}
+
+		this.replicas = replicas.clone();
+		this.next = new AtomicInteger();
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	@Override
+	public final PooledDataSource acquire() {
+		return replicas[(next.getAndIncrement() & Integer.MAX_VALUE) % replicas.length];
+	}
+
+	@Override
+	public final void release(final PooledDataSource replica) {
+		// Nothing to track
+	}
+
+}	// End RoundRobinBalancer
@@ -7,6 +7,7 @@ public final class Delete extends Conditional<Delete> {
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	public Delete(final String tableName) {
+		table = tableName;
 		buf = new StringExtractor(325);
 		buf.append("DELETE FROM ").append(tableName);
 	}
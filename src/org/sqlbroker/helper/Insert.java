@@ -11,6 +11,7 @@ public final class Insert extends SQL {
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	public Insert(final String tableName) {
+		table = tableName;
 		buf = new StringExtractor(325);
 		buf.append("INSERT INTO ").append(tableName).append(" (");
 	}
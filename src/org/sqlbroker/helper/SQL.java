@@ -11,6 +11,9 @@ public abstract class SQL {
 	StringExtractor		buf;
 	final Parameters	params;
 
+	/** The table written by the statement, or <code>null</code>		*/
+	String				table;
+
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	SQL() {
@@ -23,6 +26,10 @@ public abstract class SQL {
 		return params;
 	}
 
+	public final String getTable() {
+		return table;
+	}
+
 	@Override
 	public String toString() {
 		return buf.toString();
@@ -13,6 +13,7 @@ public final class Update extends Conditional<Update> {
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	public Update(final String table) {
+		this.table = table;
 		buf = new StringExtractor(325);
 		buf.append("UPDATE ").append(table).append(" SET ");
 		audits = new ListArray<Audit>();
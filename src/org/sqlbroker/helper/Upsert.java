@@ -0,0 +1,245 @@
+package org.sqlbroker.helper;
+
+import org.sqlbroker.Dialect;
+
+import root.adt.ListArray;
+import root.lang.StringExtractor;
+
+/**
+ * Describes an upsert of a table by its key columns and the value columns
+ * to insert or update, from which the statement of each {@link Dialect}
+ * is written. Every row of parameters holds the keys first followed by
+ * the values, in the order they were added.
+ *
+ * @author esmith
+ */
+public final class Upsert {
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	private final String table;
+
+	private final ListArray<String> keys;
+
+	private final ListArray<String> columns;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	public Upsert(final String tableName) {
+		table = tableName;
+		keys = new ListArray<>();
+		columns = new ListArray<>();
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	public final Upsert column(final String columnName) {
+		columns.add(columnName);
+		return this;
+	}
+
+	public final Upsert key(final String columnName) {
+		keys.add(columnName);
+		return this;
+	}
+
+	public final int getColumnCount() {
+		return columns.getSize();
+	}
+
+	public final int getKeyCount() {
+		return keys.getSize();
+	}
+
+	public final String getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the <code>INSERT</code> of a row, taking its parameters in the
+	 * same order as the upsert.
+	 */
+	public final String toInsert() {
+		final StringExtractor buf = new StringExtractor(128);
+
+		buf.append("INSERT INTO ").append(table).append(" (");
+		appendColumns(buf, "", "");
+		buf.append(") VALUES (");
+		appendParams(buf);
+		return buf.append(')').toString();
+	}
+
+	/**
+	 * Returns the single statement upsert of the {@link Dialect}, or
+	 * <code>null</code> if it has none.
+	 *
+	 * @param dialect the {@link Dialect} of the database
+	 * @return the upsert statement, or <code>null</code>
+	 */
+	public final String toSql(final Dialect dialect) {
+		final StringExtractor buf = new StringExtractor(256);
+
+		if (keys.isEmpty()) {
+			throw new IllegalStateException("An upsert of " + table + " needs at least one key column");
+		}
+
+		switch (dialect) {
+			case MYSQL:
+				buf.append(toInsert()).append(" ON DUPLICATE KEY UPDATE ");
+				if (columns.isEmpty()) {
+					buf.append(keys.get(0)).append(" = ").append(keys.get(0));
+				} else {
+					appendAssignments(buf, columns, "VALUES(", ")");
+				}
+				return buf.toString();
+			case POSTGRESQL:
+			case SQLITE:
+				buf.append(toInsert()).append(" ON CONFLICT (");
+				appendList(buf, keys, "", "");
+				if (columns.isEmpty()) {
+					buf.append(") DO NOTHING");
+				} else {
+					buf.append(") DO UPDATE SET ");
+					appendAssignments(buf, columns, "EXCLUDED.", "");
+				}
+				return buf.toString();
+			case H2:
+				buf.append("MERGE INTO ").append(table).append(" (");
+				appendColumns(buf, "", "");
+				buf.append(") KEY (");
+				appendList(buf, keys, "", "");
+				buf.append(") VALUES (");
+				appendParams(buf);
+				return buf.append(')').toString();
+			case ORACLE:
+				buf.append("MERGE INTO ").append(table).append(" d USING (SELECT ");
+				appendAliasedParams(buf, keys);
+				if (!columns.isEmpty()) {
+					buf.addSeparator();
+					appendAliasedParams(buf, columns);
+				}
+				buf.append(" FROM dual) s ON (");
+				appendMerge(buf);
+				return buf.toString();
+			case SQLSERVER:
+				buf.append("MERGE INTO ").append(table).append(" AS d USING (VALUES (");
+				appendParams(buf);
+				buf.append(")) AS s (");
+				appendColumns(buf, "", "");
+				buf.append(") ON (");
+				appendMerge(buf);
+				return buf.append(';').toString();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the <code>UPDATE</code> of a row, which takes the values
+	 * first followed by the keys. Without value columns, the first key is
+	 * set to itself so that the update count still tells whether the row
+	 * exists.
+	 */
+	public final String toUpdate() {
+		final StringExtractor buf = new StringExtractor(128);
+
+		buf.append("UPDATE ").append(table).append(" SET ");
+		if (columns.isEmpty()) {
+			buf.append(keys.get(0)).append(" = ").append(keys.get(0));
+		} else {
+			for (int i=0; i < columns.getSize(); i++) {
+				if (i > 0) {
+					buf.addSeparator();
+				}
+				buf.append(columns.get(i)).append(" = ?");
+			}
+		}
+
+		buf.append(" WHERE ");
+		for (int i=0; i < keys.getSize(); i++) {
+			if (i > 0) {
+				buf.append(" AND ");
+			}
+			buf.append(keys.get(i)).append(" = ?");
+		}
+
+		return buf.toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private void appendAliasedParams(final StringExtractor buf, final ListArray<String> names) {
+		for (int i=0; i < names.getSize(); i++) {
+			if (i > 0) {
+				buf.addSeparator();
+			}
+			buf.append("? ").append(names.get(i));
+		}
+	}
+
+	private void appendAssignments(final StringExtractor buf, final ListArray<String> names, final String before, final String after) {
+		for (int i=0; i < names.getSize(); i++) {
+			if (i > 0) {
+				buf.addSeparator();
+			}
+			buf.append(names.get(i)).append(" = ").append(before).append(names.get(i)).append(after);
+		}
+	}
+
+	private void appendColumns(final StringExtractor buf, final String before, final String after) {
+		appendList(buf, keys, before, after);
+		if (!columns.isEmpty()) {
+			buf.addSeparator();
+			appendList(buf, columns, before, after);
+		}
+	}
+
+	private void appendList(final StringExtractor buf, final ListArray<String> names, final String before, final String after) {
+		for (int i=0; i < names.getSize(); i++) {
+			if (i > 0) {
+				buf.addSeparator();
+			}
+			buf.append(before).append(names.get(i)).append(after);
+		}
+	}
+
+	/**
+	 * Appends the join condition and the clauses of a <code>MERGE</code>
+	 * from source <code>s</code> into destination <code>d</code>.
+	 */
+	private void appendMerge(final StringExtractor buf) {
+		for (int i=0; i < keys.getSize(); i++) {
+			if (i > 0) {
+				buf.append(" AND ");
+			}
+			buf.append("d.").append(keys.get(i)).append(" = s.").append(keys.get(i));
+		}
+		buf.append(')');
+
+		if (!columns.isEmpty()) {
+			buf.append(" WHEN MATCHED THEN UPDATE SET ");
+			for (int i=0; i < columns.getSize(); i++) {
+				if (i > 0) {
+					buf.addSeparator();
+				}
+				buf.append("d.").append(columns.get(i)).append(" = s.").append(columns.get(i));
+			}
+		}
+
+		buf.append(" WHEN NOT MATCHED THEN INSERT (");
+		appendColumns(buf, "", "");
+		buf.append(") VALUES (");
+		appendColumns(buf, "s.", "");
+		buf.append(')');
+	}
+
+	private void appendParams(final StringExtractor buf) {
+		final int n = keys.getSize() + columns.getSize();
+
+		buf.append('?');
+		for (int i=1; i < n; i++) {
+			buf.addSeparator().append('?');
+		}
+	}
+
+}	// End Upsert
@@ -3,7 +3,10 @@ package org.sqlbroker.mapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import org.sqlbroker.ResultShape;
+
 import root.lang.ParamString;
+import root.util.Root;
 
 @SuppressWarnings("unchecked")
 public class ColumnMapper<T> implements Mapper<T> {
@@ -31,7 +34,23 @@ public class ColumnMapper<T> implements Mapper<T> {
 	}
 
 	public T map(final ResultSet rs) throws SQLException {
-		return type.get(rs, (colName == null) ? colIndex : rs.findColumn(colName));
+		return type.get(rs, (colName == null) ? colIndex : ResultShape.findColumn(rs, colName));
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+
+		final ColumnMapper<?> m = (ColumnMapper<?>) o;
+
+		return type == m.type && colIndex == m.colIndex && Root.equals(colName, m.colName);
+	}
+
+	@Override
+	public int hashCode() {
+		return Root.hashCode(type) ^ colIndex ^ Root.hashCode(colName);
 	}
 
 	@Override
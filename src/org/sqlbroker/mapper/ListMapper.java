@@ -3,8 +3,11 @@ package org.sqlbroker.mapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import org.sqlbroker.ResultShape;
+
 import root.adt.ListArray;
 import root.lang.ParamString;
+import root.util.Root;
 
 @SuppressWarnings("unchecked")
 public class ListMapper<T> implements Mapper<ListArray<T>> {
@@ -33,7 +36,7 @@ public class ListMapper<T> implements Mapper<ListArray<T>> {
 
 	public ListArray<T> map(final ResultSet rs) throws SQLException {
 		final ListArray<T> a = new ListArray<T>();
-		final int i = (colName == null) ? colIndex : rs.findColumn(colName);
+		final int i = (colName == null) ? colIndex : ResultShape.findColumn(rs, colName);
 
 		do {
 			a.add(type.get(rs, i));
@@ -42,6 +45,22 @@ public class ListMapper<T> implements Mapper<ListArray<T>> {
 		return a;
 	}
 
+	@Override
+	public boolean equals(final Object o) {
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+
+		final ListMapper<?> m = (ListMapper<?>) o;
+
+		return type == m.type && colIndex == m.colIndex && Root.equals(colName, m.colName);
+	}
+
+	@Override
+	public int hashCode() {
+		return Root.hashCode(type) ^ colIndex ^ Root.hashCode(colName);
+	}
+
 	@Override
 	public String toString() {
 		return ParamString.formatMsg("List<{P}> from column {P}", type, (colName == null) ? colIndex : colName);
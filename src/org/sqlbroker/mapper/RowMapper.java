@@ -3,7 +3,10 @@ package org.sqlbroker.mapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import org.sqlbroker.ResultShape;
+
 import root.lang.ParamString;
+import root.util.Root;
 
 public class RowMapper<T> implements Mapper<T[]> {
 
@@ -15,7 +18,17 @@ public class RowMapper<T> implements Mapper<T[]> {
 	}
 
 	public T[] map(final ResultSet rs) throws SQLException {
-		return type.getRow(rs, rs.getMetaData().getColumnCount());
+		return type.getRow(rs, ResultShape.columnCount(rs));
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o != null && o.getClass() == getClass() && type == ((RowMapper<?>) o).type;
+	}
+
+	@Override
+	public int hashCode() {
+		return Root.hashCode(type);
 	}
 
 	@Override
@@ -3,8 +3,11 @@ package org.sqlbroker.mapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import org.sqlbroker.ResultShape;
+
 import root.adt.ListArray;
 import root.lang.ParamString;
+import root.util.Root;
 
 public class TableMapper<T> implements Mapper<ListArray<T[]>> {
 
@@ -16,7 +19,7 @@ public class TableMapper<T> implements Mapper<ListArray<T[]>> {
 	}
 
 	public ListArray<T[]> map(final ResultSet rs) throws SQLException {
-		final int rowLen = rs.getMetaData().getColumnCount();
+		final int rowLen = ResultShape.columnCount(rs);
 		final ListArray<T[]> a = new ListArray<T[]>();
 
 		do {
@@ -26,6 +29,16 @@ public class TableMapper<T> implements Mapper<ListArray<T[]>> {
 		return a;
 	}
 
+	@Override
+	public boolean equals(final Object o) {
+		return o != null && o.getClass() == getClass() && type == ((TableMapper<?>) o).type;
+	}
+
+	@Override
+	public int hashCode() {
+		return Root.hashCode(type);
+	}
+
 	@Override
 	public String toString() {
 		return ParamString.formatMsg("List<{P}[]>", type);
@@ -1,19 +1,33 @@
 package org.sqlbroker.proxy;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
 
 import org.sqlbroker.annotation.Cached;
 
-//import root.cache.LRUMultiKeyCache;
-import root.adt.MapHashed;
+import root.adt.ListArray;
 import root.log.Log;
 
 /**
- * TODO:
- * 		+ Ok so this only caches at the method level. Pass in the same arguments and get the same result.
- * 		+ So how would one invalidate this cache when a change is made?
+ * Caches the results of the interface methods whose implementation is
+ * annotated with {@link Cached}. Pass in the same arguments and get the same
+ * result back without invoking the method, until the result is evicted by
+ * the LRU or its ttl expires. Each cached method has its own
+ * {@link MethodCache}, which <code>getCaches()</code> returns for reporting.
+ *
+ * A handler is resolved for every interface method when the proxy is
+ * created and kept in a <code>HashMap</code> keyed by its {@link Method}, so
+ * an invocation costs one hash lookup, which compares by
+ * <code>Method.equals()</code> since the proxy passes in a copy of the
+ * {@link Method} on each call, before it is either answered from the cache
+ * or passed through.
+ *
+ * Cached results are invalidated by the writes SQLBroker makes to the
+ * tables listed in {@link Cached#tables()}, see
+ * {@link org.sqlbroker.TableChanges}.
  *
  * @author esmith
  */
@@ -28,29 +42,49 @@ public final class CacheProxy implements InvocationHandler {
 		return (T) Proxy.newProxyInstance(obj.getClass().getClassLoader(), obj.getClass().getInterfaces(), new CacheProxy(obj));
 	}
 
+	/**
+	 * Returns the {@link MethodCache} of every cached method of a proxy
+	 * returned by <code>create()</code>.
+	 *
+	 * @param proxy the cache proxy
+	 * @return the {@link MethodCache}s of the proxy
+	 */
+	public static final ListArray<MethodCache> getCaches(final Object proxy) {
+		return ((CacheProxy) Proxy.getInvocationHandler(proxy)).caches;
+	}
+
 	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
 
-	/** The cache-managed object		*/
+	/** The cache-managed object										*/
 	private final Object delegate;
 
-	/**	The method names to cache		*/
-//	private final MapHashed<Method, LRUMultiKeyCache<Object, Object>> cacheMap;
-	private final MapHashed<Method, Object> cacheMap;
+	/** The caches of the cached methods								*/
+	private final ListArray<MethodCache> caches;
+
+	/** The handler of each interface method, looked up by Method.equals()	*/
+	private final HashMap<Method, Handler> handlers;
 
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	private CacheProxy(final Object obj) {
 		log.debug("Configuring cache for class {P}", obj.getClass());
 		delegate = obj;
-		cacheMap = new MapHashed<>();
+		caches = new ListArray<>();
+		handlers = new HashMap<>();
 
 		Cached c;
-		for (Class<?> clazz = obj.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
-			for (Method m : clazz.getDeclaredMethods()) {
-				c = m.getAnnotation(Cached.class);
-				if (c != null) {
-					log.debug("Creating a {P} element cache for {P}", c.size(), m);
-//					cacheMap.put(m, new LRUMultiKeyCache<>(c.size()));
+		MethodCache cache;
+		for (Class<?> i : obj.getClass().getInterfaces()) {
+			for (Method m : i.getMethods()) {
+				c = getCached(obj.getClass(), m);
+
+				if (c == null) {
+					handlers.put(m, new Handler(m, null));
+				} else {
+					log.debug("Creating a {P} element cache with a ttl of {P} ms for {P}", c.size(), c.ttl(), m);
+					cache = new MethodCache(m, c);
+					caches.add(cache);
+					handlers.put(m, new Handler(m, cache));
 				}
 			}
 		}
@@ -59,26 +93,76 @@ public final class CacheProxy implements InvocationHandler {
 	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
 
 	public final Object invoke(final Object proxy, final Method m, final Object[] args) throws Throwable {
-//		final LRUMultiKeyCache<Object, Object> cache = cacheMap.get(m);
-		final Object cache = cacheMap.get(m);
+		final Handler h = handlers.get(m);
+
+		return (h != null) ? h.invoke(args) : call(m, args);
+	}
 
-		if (cache == null) {
-			log.debug("Invoking method {P}: no cache found", m);
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	private Object call(final Method m, final Object[] args) throws Throwable {
+		try {
 			return m.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
 		}
+	}
 
-//		Object val = cache.get(args);
-		Object val = null;
-
-		if (val == null) {
-			val = m.invoke(delegate, args);
-//			cache.put(args, val);
-			log.debug("{P}: Put {P} into the cache under {P}", m, val, args);
-		} else {
-			log.debug("{P}: Cache returned {P} for {P}", m, val, args);
+	/**
+	 * Returns the {@link Cached} annotation of the implementation of the
+	 * interface method, or of the interface method itself.
+	 */
+	private static Cached getCached(final Class<?> clazz, final Method m) {
+		for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+			try {
+				final Cached cached = c.getDeclaredMethod(m.getName(), m.getParameterTypes()).getAnnotation(Cached.class);
+
+				if (cached != null) {
+					return cached;
+				}
+			} catch (NoSuchMethodException e) {
+				// Keep looking in the superclass
+			}
 		}
 
-		return val;
+		return m.getAnnotation(Cached.class);
 	}
 
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private final class Handler {
+
+		private final Method		method;
+
+		/** The result cache, or <code>null</code> to always pass through	*/
+		private final MethodCache	cache;
+
+		private Handler(final Method method, final MethodCache cache) {
+			this.method = method;
+			this.cache = cache;
+		}
+
+		private Object invoke(final Object[] args) throws Throwable {
+			if (cache == null) {
+				return call(method, args);
+			}
+
+			final Object key = MethodCache.key(args);
+			Object val = cache.get(key);
+
+			if (val == cache) {
+				final long gen = cache.getGeneration();
+
+				val = call(method, args);
+				cache.put(key, val, gen);
+				log.debug("{P}: Put {P} into the cache under {P}", method, val, args);
+			} else {
+				log.debug("{P}: Cache returned {P} for {P}", method, val, args);
+			}
+
+			return val;
+		}
+
+	}	// End Handler
+
 } // End CacheProxy
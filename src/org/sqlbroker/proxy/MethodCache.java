@@ -0,0 +1,227 @@
+package org.sqlbroker.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sqlbroker.TableChanges;
+import org.sqlbroker.annotation.Cached;
+
+import root.cache.CacheLRUConcurrent;
+import root.cache.CacheTimedConcurrent;
+import root.cache.RootCache;
+import root.lang.Extractable;
+import root.lang.StringExtractor;
+
+/**
+ * The result cache of one {@link Cached} method of a {@link CacheProxy}. It
+ * holds at most {@link Cached#size()} results in least recently used order,
+ * each of which expires {@link Cached#ttl()} milliseconds after it was put
+ * when a ttl is set. Results are keyed by the method arguments compared
+ * structurally, so arrays match by content, and <code>null</code> results
+ * are cached as well.
+ *
+ * If {@link Cached#tables()} names the tables the results are read from, the
+ * whole cache is cleared whenever {@link TableChanges} reports a write to
+ * any of them. A result read before such a write but returned after it is
+ * not cached.
+ *
+ * The hit, miss, and eviction counts are kept per method. An eviction is
+ * counted whenever putting a result pushes out another one, which under
+ * concurrent misses for the same arguments may include the result of the
+ * other caller.
+ *
+ * @author esmith
+ */
+public final class MethodCache implements Extractable, TableChanges.Listener {
+
+	// <><><><><><><><><><><><><>< Static Artifacts ><><><><><><><><><><><><><>
+
+	/** The key of a method invoked without arguments					*/
+	private static final Object NO_ARGS = new Object();
+
+	/** Stands in for a cached <code>null</code> result					*/
+	private static final Object NULL = new Object();
+
+	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
+
+	/** The cached method of the proxied interface						*/
+	private final Method method;
+
+	/** The result time to live in milliseconds, or zero for none		*/
+	private final long ttl;
+
+	private final RootCache<Object, Object> cache;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+
+	/** Incremented every time the cache is invalidated by a table change	*/
+	private final AtomicLong generation;
+
+	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
+
+	MethodCache(final Method method, final Cached c) {
+		this.method = method;
+		this.ttl = c.ttl();
+		this.cache = (ttl > 0) ? new CacheTimedConcurrent<>(c.size(), ttl) : new CacheLRUConcurrent<>(c.size());
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.generation = new AtomicLong();
+
+		if (c.tables().length > 0) {
+			TableChanges.subscribe(this, c.tables());
+		}
+	}
+
+	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
+
+	/**
+	 * Removes every cached result.
+	 */
+	public final void clear() {
+		cache.clear();
+	}
+
+	public final int getCapacity() {
+		return cache.getCapacity();
+	}
+
+	public final long getEvictions() {
+		return evictions.get();
+	}
+
+	public final long getHits() {
+		return hits.get();
+	}
+
+	public final Method getMethod() {
+		return method;
+	}
+
+	public final long getMisses() {
+		return misses.get();
+	}
+
+	public final int getSize() {
+		return cache.getSize();
+	}
+
+	public final long getTtl() {
+		return ttl;
+	}
+
+	@Override
+	public final void tableChanged(final String table) {
+		generation.incrementAndGet();
+		cache.clear();
+	}
+
+	@Override
+	public final void extract(final StringExtractor extractor) {
+		extractor.append("MethodCache [method=").append(method.getName());
+		extractor.append(", size=").append(cache.getSize());
+		extractor.append(", capacity=").append(cache.getCapacity());
+		extractor.append(", ttl=").append(ttl);
+		extractor.append(", hits=").append(hits.get());
+		extractor.append(", misses=").append(misses.get());
+		extractor.append(", evictions=").append(evictions.get());
+		extractor.append(']');
+	}
+
+	@Override
+	public final String toString() {
+		final StringExtractor chars = new StringExtractor(160);
+		extract(chars);
+		return chars.toString();
+	}
+
+	//  <><><><><><><><><><><><><>< Package Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the cache key of the arguments. A single argument that is not
+	 * an array is its own key; anything else is wrapped in an {@link ArgsKey}.
+	 */
+	static final Object key(final Object[] args) {
+		if (args == null || args.length == 0) {
+			return NO_ARGS;
+		}
+
+		if (args.length == 1 && args[0] != null && !args[0].getClass().isArray()) {
+			return args[0];
+		}
+
+		return new ArgsKey(args);
+	}
+
+	/**
+	 * Returns the cached result, or <code>this</code> if there is none since
+	 * <code>null</code> is a valid result.
+	 */
+	final Object get(final Object key) {
+		final Object val = cache.get(key);
+
+		if (val == null) {
+			misses.incrementAndGet();
+			return this;
+		}
+
+		hits.incrementAndGet();
+		return (val == NULL) ? null : val;
+	}
+
+	final long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Caches the result unless a table change invalidated the cache since
+	 * <code>getGeneration()</code> returned <code>gen</code>. The generation
+	 * is checked again once the result is in, since an invalidation between
+	 * the check and the put would otherwise leave it cached.
+	 */
+	final void put(final Object key, final Object val, final long gen) {
+		if (gen != generation.get()) {
+			return;
+		}
+
+		if (cache.put(key, (val == null) ? NULL : val) != null) {
+			evictions.incrementAndGet();
+		}
+
+		if (gen != generation.get()) {
+			cache.remove(key);
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	/**
+	 * The arguments of one invocation, compared element by element and by
+	 * content for arrays. The arguments must not be modified afterwards.
+	 */
+	private static final class ArgsKey {
+
+		private final int hash;
+		private final Object[] args;
+
+		private ArgsKey(final Object[] args) {
+			this.args = args;
+			this.hash = Arrays.deepHashCode(args);
+		}
+
+		@Override
+		public final boolean equals(final Object o) {
+			return o == this || (o instanceof ArgsKey && hash == ((ArgsKey) o).hash && Arrays.deepEquals(args, ((ArgsKey) o).args));
+		}
+
+		@Override
+		public final int hashCode() {
+			return hash;
+		}
+
+	}	// End ArgsKey
+
+}	// End MethodCache
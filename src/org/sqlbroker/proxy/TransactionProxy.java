@@ -1,20 +1,54 @@
 package org.sqlbroker.proxy;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.sqlbroker.ReadOnly;
+import org.sqlbroker.TableChanges;
 import org.sqlbroker.annotation.Txn;
 
-import root.adt.MapHashed;
 import root.jdbc.TransactionIsolationLevel;
 import root.jdbc.Transaction;
 import root.log.Log;
 
 /**
- * TODO:
- * 		+ In the future where there are more options on the @Txn annotation, need
- * 		  to track the @Txn annotation itself to the method it applies to
+ * Runs the interface methods whose implementation is annotated with
+ * {@link Txn}, or that are declared in a class annotated with {@link Txn},
+ * in a {@link Transaction} which is committed when the method returns and
+ * rolled back when it throws. A method called while a transaction is
+ * already in progress joins that transaction.
+ *
+ * The {@link Txn} that applies to each interface method and a
+ * {@link MethodHandle} bound to the delegate are worked out once, when the
+ * proxy is created, and mapped by {@link Method}. The {@link Method} handed
+ * to <code>invoke()</code> is not the instance that was mapped but an equal
+ * one, so it is found with a <code>HashMap</code> probe on
+ * <code>Method.equals()</code>, which also tells overloads apart by their
+ * parameter types, after which the delegate is called directly. Should the
+ * interface not be accessible to this class, the method is invoked
+ * reflectively.
+ *
+ * A method annotated with {@link Txn#readOnly()} runs in a {@link ReadOnly}
+ * transaction, which a SQLBroker with replicas routes to one of them.
+ *
+ * A transaction that fails with a {@link SQLException}, anywhere in the
+ * cause chain, whose SQLState starts with one of {@link Txn#retryOn()} is
+ * rolled back and run again up to {@link Txn#attempts()} times in all,
+ * which by default covers deadlock victims and serialization failures.
+ * Before each retry the thread sleeps for a random time of up to
+ * {@link Txn#backoff()} milliseconds, doubled on every retry and capped
+ * at {@link Txn#maxBackoff()}, so that the transactions that collided do
+ * not collide again. Only the transaction begun by the proxy is retried,
+ * never one it joined, and the method must be safe to run again.
  *
  * @author esmith
  */
@@ -24,39 +58,74 @@ public final class TransactionProxy implements InvocationHandler {
 
 	private static final Log log = new Log(TransactionProxy.class);
 
+	/** Passed to the {@link MethodHandle} of a method without arguments	*/
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/** The type every {@link MethodHandle} is adapted to				*/
+	private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+
 	@SuppressWarnings("unchecked")
 	public static final <T> T create(final T obj) {
 		return (T) Proxy.newProxyInstance(obj.getClass().getClassLoader(), obj.getClass().getInterfaces(), new TransactionProxy(obj));
 	}
 
+	/**
+	 * Returns the number of transactions of a proxy returned by
+	 * <code>create()</code> that were run again after a retryable failure.
+	 *
+	 * @param proxy the transaction proxy
+	 * @return the number of retries
+	 */
+	public static final long getRetries(final Object proxy) {
+		return ((TransactionProxy) Proxy.getInvocationHandler(proxy)).retries.get();
+	}
+
+	/**
+	 * Returns the number of transactions of a proxy returned by
+	 * <code>create()</code> that still failed with a retryable failure on
+	 * their last attempt.
+	 *
+	 * @param proxy the transaction proxy
+	 * @return the number of retries given up on
+	 */
+	public static final long getRetryFailures(final Object proxy) {
+		return ((TransactionProxy) Proxy.getInvocationHandler(proxy)).retryFailures.get();
+	}
+
 	// <><><><><><><><><><><><><>< Class Attributes ><><><><><><><><><><><><><>
 
 	/** The transaction-managed object													*/
 	private final Object delegate;
 
-	/**	The method names and associated isolation levels to run under a transaction		*/
-	private final MapHashed<String, TransactionIsolationLevel> transactionMap;
+	/** The handler of each interface method, looked up by Method.equals()			*/
+	private final HashMap<Method, Handler> handlers;
+
+	/** Number of transactions run again after a retryable failure					*/
+	private final AtomicLong retries;
+
+	/** Number of transactions failing on their last attempt with a retryable failure	*/
+	private final AtomicLong retryFailures;
 
 	// <><><><><><><><><><><><><><>< Constructors ><><><><><><><><><><><><><><>
 
 	private TransactionProxy(final Object obj) {
 		log.debug("Configuring transaction management for class {P}", obj.getClass());
 		delegate = obj;
-		transactionMap = new MapHashed<>();
-
-		Txn cLevel, mLevel;
-		for (Class<?> clazz = obj.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
-			cLevel = clazz.getAnnotation(Txn.class);
-
-			for (Method m : clazz.getDeclaredMethods()) {
-				mLevel = m.getAnnotation(Txn.class);
-				if (mLevel != null) {
-					log.debug("Creating method-level transaction entry for {P}", m);
-					transactionMap.put(m.getName(), mLevel.value());
-				} else if (cLevel != null) {
-					log.debug("Creating class-level transaction entry for {P}", m);
-					transactionMap.put(m.getName(), cLevel.value());
+		handlers = new HashMap<>();
+		retries = new AtomicLong();
+		retryFailures = new AtomicLong();
+
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		Txn txn;
+		for (Class<?> i : obj.getClass().getInterfaces()) {
+			for (Method m : i.getMethods()) {
+				txn = getTxn(obj.getClass(), m);
+
+				if (txn != null) {
+					log.debug("Creating transaction entry with isolation level {P} for {P}", txn.value(), m);
 				}
+
+				handlers.put(m, new Handler(m, bind(lookup, m), txn));
 			}
 		}
 	}
@@ -64,22 +133,185 @@ public final class TransactionProxy implements InvocationHandler {
 	// <><><><><><><><><><><><><><> Public Methods <><><><><><><><><><><><><><>
 
 	public final Object invoke(final Object proxy, final Method m, final Object[] args) throws Throwable {
-		final TransactionIsolationLevel isoLevel = transactionMap.get(m.getName());
+		final Handler h = handlers.get(m);
 
-		if (isoLevel == null || Transaction.isActive()) {
+		if (h == null) {
+			// Object methods such as equals() and hashCode() go straight to the delegate
+			return call(m, args);
+		}
+
+		if (h.isoLevel == null || Transaction.isActive()) {
 			// No transaction entry found or transaction already in progress, invoke method normally
-			return m.invoke(delegate, args);
+			return h.invoke(args);
+		}
+
+		boolean readOnly = false;
+
+		for (int attempt=1;; attempt++) {
+			try {
+				if (h.readOnly) {
+					ReadOnly.begin();
+					readOnly = true;
+				}
+
+				Transaction.begin(h.isoLevel);
+				final Object retVal = h.invoke(args);
+				Transaction.commit();
+				return retVal;
+			} catch (Throwable t) {
+				// A failed commit has already ended the transaction
+				if (Transaction.isActive()) {
+					Transaction.rollback();
+				}
+
+				if (h.attempts == 1 || !h.isRetryable(t)) {
+					throw t;
+				}
+
+				if (attempt == h.attempts) {
+					retryFailures.incrementAndGet();
+					throw t;
+				}
+
+				retries.incrementAndGet();
+				log.debug("Retrying {P} after attempt {P} failed with {P}", h.method, attempt, t);
+				h.backoff(attempt, t);
+			} finally {
+				if (readOnly) {
+					ReadOnly.end();
+					readOnly = false;
+				}
+
+				// Evict what other threads cached while the writes were uncommitted
+				TableChanges.flush();
+			}
+		}
+	}
+
+	//  <><><><><><><><><><><><><>< Private Methods ><><><><><><><><><><><><><>
+
+	/**
+	 * Returns the interface method bound to the delegate and adapted to take
+	 * its arguments as an array, or <code>null</code> if it is not accessible.
+	 */
+	private MethodHandle bind(final MethodHandles.Lookup lookup, final Method m) {
+		try {
+			return lookup.unreflect(m).bindTo(delegate).asSpreader(Object[].class, m.getParameterTypes().length).asType(SPREAD_TYPE);
+		} catch (IllegalAccessException e) {
+			log.debug("Invoking {P} reflectively since it is not accessible", m);
+			return null;
 		}
+	}
 
-		Transaction.begin(isoLevel);
+	private Object call(final Method m, final Object[] args) throws Throwable {
 		try {
-			final Object retVal = m.invoke(delegate, args);
-			Transaction.commit();
-			return retVal;
-		} catch (Throwable t) {
-			Transaction.rollback();
-			throw t;
+			return m.invoke(delegate, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Returns the {@link Txn} annotation of the implementation of the
+	 * interface method or of the class declaring it, or of the interface
+	 * method itself.
+	 */
+	private static Txn getTxn(final Class<?> clazz, final Method m) {
+		Txn txn = null;
+
+		for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+			try {
+				txn = c.getDeclaredMethod(m.getName(), m.getParameterTypes()).getAnnotation(Txn.class);
+
+				if (txn == null) {
+					txn = c.getAnnotation(Txn.class);
+				}
+				break;
+			} catch (NoSuchMethodException e) {
+				// Keep looking in the superclass
+			}
 		}
+
+		return (txn != null) ? txn : m.getAnnotation(Txn.class);
 	}
 
+	//  <><><><><><><><><><><><><>< Private Classes ><><><><><><><><><><><><><>
+
+	private final class Handler {
+
+		private final Method					method;
+
+		/** The delegate method, or <code>null</code> to invoke it reflectively	*/
+		private final MethodHandle				handle;
+
+		/** The isolation level, or <code>null</code> to run without a transaction	*/
+		private final TransactionIsolationLevel	isoLevel;
+
+		/** Whether the transaction is routed to a replica					*/
+		private final boolean					readOnly;
+
+		/** The retry policy copied from the {@link Txn}						*/
+		private final int						attempts;
+		private final long						backoff;
+		private final long						maxBackoff;
+		private final String[]					retryOn;
+
+		private Handler(final Method method, final MethodHandle handle, final Txn txn) {
+			this.method = method;
+			this.handle = handle;
+			this.isoLevel = (txn == null) ? null : txn.value();
+			this.readOnly = txn != null && txn.readOnly();
+			this.attempts = (txn == null) ? 1 : Math.max(txn.attempts(), 1);
+			this.backoff = (txn == null) ? 0 : txn.backoff();
+			this.maxBackoff = (txn == null) ? 0 : txn.maxBackoff();
+			this.retryOn = (txn == null) ? null : txn.retryOn();
+		}
+
+		/**
+		 * Sleeps for a random time of up to the backoff of the attempt, or
+		 * rethrows the failure if interrupted.
+		 */
+		private void backoff(final int attempt, final Throwable t) throws Throwable {
+			final long bound = Math.min(maxBackoff, backoff << Math.min(attempt - 1, 30));
+
+			if (bound > 0) {
+				try {
+					Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw t;
+				}
+			}
+		}
+
+		private Object invoke(final Object[] args) throws Throwable {
+			if (handle == null) {
+				return call(method, args);
+			}
+
+			return (Object) handle.invokeExact((args == null) ? NO_ARGS : args);
+		}
+
+		private boolean isRetryable(final Throwable t) {
+			String state;
+
+			for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+				if (cause instanceof SQLException) {
+					state = ((SQLException) cause).getSQLState();
+
+					if (state != null) {
+						for (String prefix : retryOn) {
+							if (state.startsWith(prefix)) {
+								return true;
+							}
+						}
+					}
+				}
+			}
+
+			return false;
+		}
+
+	}	// End Handler
+
 }